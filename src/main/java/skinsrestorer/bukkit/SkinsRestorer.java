@@ -5,17 +5,16 @@ import org.bukkit.Bukkit;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
-import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.plugin.messaging.PluginMessageListener;
 import skinsrestorer.bukkit.commands.GUICommand;
 import skinsrestorer.bukkit.commands.SkinCommand;
 import skinsrestorer.bukkit.commands.SrCommand;
+import skinsrestorer.bukkit.listeners.LoginListener;
 import skinsrestorer.bukkit.menu.SkinsGUI;
 import skinsrestorer.bukkit.skinfactory.SkinFactory;
 import skinsrestorer.bukkit.skinfactory.UniversalSkinFactory;
+import skinsrestorer.shared.sources.SkinSources;
 import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.CooldownStorage;
 import skinsrestorer.shared.storage.Locale;
@@ -28,6 +27,7 @@ import skinsrestorer.shared.utils.updater.bukkit.SpigetUpdate;
 import skinsrestorer.shared.utils.updater.core.UpdateCallback;
 import skinsrestorer.shared.utils.updater.core.VersionComparator;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
 
 public class SkinsRestorer extends JavaPlugin {
@@ -54,6 +54,12 @@ public class SkinsRestorer extends JavaPlugin {
     }
     
 
+    @Override
+    public void onDisable() {
+        SkinStorage.close();
+        MojangAPI.close();
+    }
+
     @Override
     public void onEnable() {
     	
@@ -188,6 +194,7 @@ public class SkinsRestorer extends JavaPlugin {
                     Config.MYSQL_USERNAME, Config.MYSQL_PASSWORD));
         else
             SkinStorage.init(getDataFolder());
+        MojangAPI.init(getDataFolder());
 
         Bukkit.getScheduler().scheduleSyncRepeatingTask(this, new CooldownStorage(), 0, 1 * 20);
 
@@ -197,31 +204,14 @@ public class SkinsRestorer extends JavaPlugin {
         getCommand("skins").setExecutor(new GUICommand());
 
         Bukkit.getPluginManager().registerEvents(new SkinsGUI(), this);
-        Bukkit.getPluginManager().registerEvents(new Listener() {
-
-            // LoginEvent happens on attemptLogin so its the best place to set
-            // the skin
-            @EventHandler
-            public void onLogin(PlayerJoinEvent e) {
-                try {
-                    if (Config.DISABLE_ONJOIN_SKINS) {
-                        factory.applySkin(e.getPlayer(),
-                                SkinStorage.getSkinData(SkinStorage.getPlayerSkin(e.getPlayer().getName())));
-                        return;
-                    }
-                    if (Config.DEFAULT_SKINS_ENABLED)
-                        if (SkinStorage.getPlayerSkin(e.getPlayer().getName()) == null) {
-                            List<String> skins = Config.DEFAULT_SKINS;
-                            int randomNum = 0 + (int) (Math.random() * skins.size());
-                            factory.applySkin(e.getPlayer(),
-                                    SkinStorage.getOrCreateSkinForPlayer(skins.get(randomNum)));
-                            return;
-                        }
-                    factory.applySkin(e.getPlayer(), SkinStorage.getOrCreateSkinForPlayer(e.getPlayer().getName()));
-                } catch (Exception ex) {
-                }
-            }
-        }, this);
+        Bukkit.getPluginManager().registerEvents(new LoginListener(), this);
+
+        // players that stayed online through a reload
+        final List<String> online = new ArrayList<>();
+        for (Player p : Bukkit.getOnlinePlayers())
+            online.add(p.getName());
+        if (!online.isEmpty())
+            Bukkit.getScheduler().runTaskAsynchronously(this, () -> SkinStorage.getRefresher().joined(online));
 
         Bukkit.getScheduler().runTaskAsynchronously(this, new Runnable() {
 
@@ -264,14 +254,18 @@ public class SkinsRestorer extends JavaPlugin {
                     });
                 }
 
-                if (Config.DEFAULT_SKINS_ENABLED)
+                if (Config.DEFAULT_SKINS_ENABLED) {
+                    // one request per ten names, getUUID hits the cache then
+                    MojangAPI.getUUIDs(Config.DEFAULT_SKINS, true);
+
                     for (String skin : Config.DEFAULT_SKINS)
                         try {
-                            SkinStorage.setSkinData(skin, MojangAPI.getSkinProperty(MojangAPI.getUUID(skin)));
+                            SkinStorage.setSkinData(skin, SkinSources.fetchSkin(skin, true));
                         } catch (SkinRequestException e) {
                             if (SkinStorage.getSkinData(skin) == null)
                                 console.sendMessage( "§e[§2SkinsRestorer§e] §cDefault Skin '" + skin + "' request error: " + e.getReason());
                         }
+                }
             }
 
         });
@@ -6,11 +6,11 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import skinsrestorer.bukkit.SkinsRestorer;
+import skinsrestorer.shared.sources.SkinSources;
 import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.CooldownStorage;
 import skinsrestorer.shared.storage.Locale;
 import skinsrestorer.shared.storage.SkinStorage;
-import skinsrestorer.shared.utils.MojangAPI;
 import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
 import java.util.concurrent.TimeUnit;
 
@@ -103,7 +103,7 @@ public class SkinCommand implements CommandExecutor {
                     public void run() {
 
                         try {
-                            MojangAPI.getUUID(skin);
+                            SkinSources.getSkin(skin);
 
 
                             SkinStorage.setPlayerSkin(p.getName(), skin);
@@ -8,6 +8,7 @@ import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.entity.Player;
 import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
 import skinsrestorer.bukkit.SkinsRestorer;
+import skinsrestorer.shared.sources.SkinSources;
 import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.Locale;
 import skinsrestorer.shared.storage.SkinStorage;
@@ -75,7 +76,7 @@ public class SrCommand implements CommandExecutor {
 
 
                         try {
-                            MojangAPI.getUUID(skin);
+                            SkinSources.getSkin(skin);
 
 
                             SkinStorage.setPlayerSkin(p.getName(), skin);
@@ -172,7 +173,9 @@ public class SrCommand implements CommandExecutor {
                     reloadConfig(sender, "&2The skin cache time is now &f" + Integer.valueOf(args[1]) + "&2minute(s)");
                 }
 
-            } else if (args.length == 1 && args[0].equalsIgnoreCase("status"))
+            } else if (args.length == 1 && args[0].equalsIgnoreCase("status")) {
+                for (String line : SkinStorage.getStatus())
+                    sender.sendMessage(line);
                 try {
                     MojangAPI.getSkinProperty(MojangAPI.getUUID("Notch"));
                     sender.sendMessage(Locale.STATUS_OK);
@@ -180,7 +183,7 @@ public class SrCommand implements CommandExecutor {
                     sender.sendMessage(e.getReason());
                 }
 
-            else if (args.length > 1 && args[0].equalsIgnoreCase("drop")) {
+            } else if (args.length > 1 && args[0].equalsIgnoreCase("drop")) {
                 StringBuilder sb = new StringBuilder();
                 for (int i = 1; i < args.length; i++)
                     sb.append(args[i]);
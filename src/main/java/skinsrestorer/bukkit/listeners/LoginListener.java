@@ -0,0 +1,123 @@
+package skinsrestorer.bukkit.listeners;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import skinsrestorer.bukkit.SkinsRestorer;
+import skinsrestorer.shared.storage.Config;
+import skinsrestorer.shared.storage.SkinStorage;
+import skinsrestorer.shared.utils.ExpiringCache;
+import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves skins while the player is still logging in (off the main thread)
+ * and sets them on the profile before the player spawns, so joining costs no
+ * respawn packets. Only skins that couldn't be resolved in time get applied
+ * the usual way after the join.
+ */
+public class LoginListener implements Listener {
+
+    // a login that never turns into a join leaves its skin behind for this long at most
+    private static final long HANDOFF_EXPIRES = TimeUnit.MINUTES.toMillis(1);
+
+    private final ExpiringCache<UUID, Object> prefetched = new ExpiringCache<>(1000);
+    // players whose skin got set before they spawned
+    private final Set<UUID> injected = ConcurrentHashMap.newKeySet();
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+            return;
+
+        try {
+            SkinStorage.getRefresher().joined(e.getName());
+            Object skin = resolve(e.getName());
+            if (skin != null)
+                prefetched.put(e.getUniqueId(), skin, HANDOFF_EXPIRES);
+        } catch (Exception ex) {
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent e) {
+        UUID uuid = e.getPlayer().getUniqueId();
+
+        if (e.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            prefetched.invalidate(uuid);
+            SkinStorage.getRefresher().quit(e.getPlayer().getName());
+            return;
+        }
+
+        Object skin = prefetched.get(uuid);
+        if (skin != null && SkinsRestorer.getInstance().getFactory().injectSkin(e.getPlayer(), skin)) {
+            prefetched.invalidate(uuid);
+            injected.add(uuid);
+        }
+    }
+
+    @EventHandler
+    public void onJoin(PlayerJoinEvent e) {
+        final Player p = e.getPlayer();
+
+        if (injected.remove(p.getUniqueId()))
+            return;
+
+        Object skin = prefetched.get(p.getUniqueId());
+        prefetched.invalidate(p.getUniqueId());
+
+        if (skin != null) {
+            SkinsRestorer.getInstance().getFactory().applySkin(p, skin);
+            return;
+        }
+
+        // the prefetch failed or the player was there before a reload
+        Bukkit.getScheduler().runTaskAsynchronously(SkinsRestorer.getInstance(), () -> {
+            try {
+                final Object props = resolve(p.getName());
+                if (props != null)
+                    Bukkit.getScheduler().runTask(SkinsRestorer.getInstance(), () -> {
+                        if (p.isOnline())
+                            SkinsRestorer.getInstance().getFactory().applySkin(p, props);
+                    });
+            } catch (Exception ex) {
+            }
+        });
+    }
+
+    @EventHandler
+    public void onQuit(PlayerQuitEvent e) {
+        prefetched.invalidate(e.getPlayer().getUniqueId());
+        injected.remove(e.getPlayer().getUniqueId());
+        SkinStorage.getRefresher().quit(e.getPlayer().getName());
+    }
+
+    /**
+     * @return Property object of the skin the player should wear, null if none
+     */
+    private static Object resolve(String name) throws SkinRequestException {
+        if (Config.DISABLE_ONJOIN_SKINS) {
+            String skin = SkinStorage.getPlayerSkin(name);
+            return skin == null ? null : SkinStorage.getSkinData(skin);
+        }
+
+        if (Config.DEFAULT_SKINS_ENABLED && SkinStorage.getPlayerSkin(name) == null) {
+            List<String> skins = Config.DEFAULT_SKINS;
+            int randomNum = (int) (Math.random() * skins.size());
+            return SkinStorage.getOrCreateSkinForPlayer(skins.get(randomNum));
+        }
+
+        return SkinStorage.getOrCreateSkinForPlayer(name);
+    }
+}
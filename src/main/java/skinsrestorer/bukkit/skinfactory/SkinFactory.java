@@ -14,9 +14,23 @@ public abstract class SkinFactory {
      * @see updateSkin
      */
     public void applySkin(final Player p, Object props) {
+        if (injectSkin(p, props))
+            updateSkin(p);
+    }
+
+    /**
+     * Sets the skin data without sending any packets. Only players that
+     * haven't spawned yet (during PlayerLoginEvent) will be seen with it,
+     * everyone else needs {@link #applySkin(Player, Object)}.
+     *
+     * @param p     - Player
+     * @param props - Property Object
+     * @return Whether the skin data could be set
+     */
+    public boolean injectSkin(Player p, Object props) {
         try {
             if (props == null)
-                return;
+                return false;
 
             Object ep = ReflectionUtil.invokeMethod(p.getClass(), p, "getHandle");
             Object profile = ReflectionUtil.invokeMethod(ep.getClass(), ep, "getProfile");
@@ -24,8 +38,9 @@ public abstract class SkinFactory {
             ReflectionUtil.invokeMethod(propmap, "clear");
             ReflectionUtil.invokeMethod(propmap.getClass(), propmap, "put", new Class[]{Object.class, Object.class},
                     new Object[]{"textures", props});
-            updateSkin(p);
+            return true;
         } catch (Exception e) {
+            return false;
         }
     }
 
@@ -3,11 +3,13 @@ package skinsrestorer.bungee;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.plugin.Plugin;
 import org.bstats.bungeecord.Metrics;
 import skinsrestorer.bungee.commands.AdminCommands;
 import skinsrestorer.bungee.commands.PlayerCommands;
 import skinsrestorer.bungee.listeners.LoginListener;
+import skinsrestorer.shared.sources.SkinSources;
 import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.Locale;
 import skinsrestorer.shared.storage.SkinStorage;
@@ -20,6 +22,8 @@ import javax.net.ssl.HttpsURLConnection;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -74,6 +78,8 @@ public class SkinsRestorer extends Plugin {
     @Override
     public void onDisable() {
         exe.shutdown();
+        SkinStorage.close();
+        MojangAPI.close();
     }
 
     @Override
@@ -96,8 +102,16 @@ public class SkinsRestorer extends Plugin {
                     Config.MYSQL_USERNAME, Config.MYSQL_PASSWORD));
         else
             SkinStorage.init(getDataFolder());
+        MojangAPI.init(getDataFolder());
 
         getProxy().getPluginManager().registerListener(this, new LoginListener());
+
+        // players that stayed online through a reload
+        final List<String> online = new ArrayList<>();
+        for (ProxiedPlayer p : getProxy().getPlayers())
+            online.add(p.getName());
+        if (!online.isEmpty())
+            getProxy().getScheduler().runAsync(this, () -> SkinStorage.getRefresher().joined(online));
         getProxy().getPluginManager().registerCommand(this, new AdminCommands());
         getProxy().getPluginManager().registerCommand(this, new PlayerCommands());
         getProxy().registerChannel("SkinsRestorer");
@@ -137,14 +151,18 @@ public class SkinsRestorer extends Plugin {
                         console.sendMessage(new TextComponent("§e[§2SkinsRestorer§e] §a----------------------------------------------"));
                     }
 
-                if (Config.DEFAULT_SKINS_ENABLED)
+                if (Config.DEFAULT_SKINS_ENABLED) {
+                    // one request per ten names, getUUID hits the cache then
+                    MojangAPI.getUUIDs(Config.DEFAULT_SKINS, true);
+
                     for (String skin : Config.DEFAULT_SKINS)
                         try {
-                            SkinStorage.setSkinData(skin, MojangAPI.getSkinProperty(MojangAPI.getUUID(skin)));
+                            SkinStorage.setSkinData(skin, SkinSources.fetchSkin(skin, true));
                         } catch (SkinRequestException e) {
                             if (SkinStorage.getSkinData(skin) == null)
                                 console.sendMessage(new TextComponent("§e[§2SkinsRestorer§e] §cDefault Skin '" + skin + "' request error:" + e.getReason()));
                         }
+                }
             }
 
         });
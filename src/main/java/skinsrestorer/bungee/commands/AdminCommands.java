@@ -10,6 +10,7 @@ import net.md_5.bungee.connection.LoginResult.Property;
 import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
 import skinsrestorer.bungee.SkinApplier;
 import skinsrestorer.bungee.SkinsRestorer;
+import skinsrestorer.shared.sources.SkinSources;
 import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.Locale;
 import skinsrestorer.shared.storage.SkinStorage;
@@ -86,7 +87,7 @@ public class AdminCommands extends Command {
 
 
                         try {
-                            MojangAPI.getUUID(skin);
+                            SkinSources.getSkin(skin);
                             SkinStorage.setPlayerSkin(p.getName(), skin);
                             SkinApplier.applySkin(p);
                             sender.sendMessage(Locale.SKIN_CHANGE_SUCCESS);
@@ -189,6 +190,24 @@ public class AdminCommands extends Command {
                 }
                 return;
 
+            } else if (args.length == 1 && args[0].equalsIgnoreCase("status")) {
+                for (String line : SkinStorage.getStatus())
+                    sender.sendMessage(line);
+
+                SkinsRestorer.getInstance().getExecutor().submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            MojangAPI.getSkinProperty(MojangAPI.getUUID("Notch"));
+                            sender.sendMessage(Locale.STATUS_OK);
+                        } catch (SkinRequestException e) {
+                            sender.sendMessage(e.getReason());
+                        }
+                    }
+
+                });
+
             } else if (args.length > 0 && args[0].equalsIgnoreCase("props")) {
 
                 ProxiedPlayer p = null;
@@ -7,12 +7,12 @@ import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.plugin.Command;
 import skinsrestorer.bungee.SkinApplier;
 import skinsrestorer.bungee.SkinsRestorer;
+import skinsrestorer.shared.sources.SkinSources;
 import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.CooldownStorage;
 import skinsrestorer.shared.storage.Locale;
 import skinsrestorer.shared.storage.SkinStorage;
 import skinsrestorer.shared.utils.C;
-import skinsrestorer.shared.utils.MojangAPI;
 import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
 import java.util.concurrent.TimeUnit;
 
@@ -100,7 +100,7 @@ public class PlayerCommands extends Command {
 
 
                         try {
-                            MojangAPI.getUUID(skin);
+                            SkinSources.getSkin(skin);
                             SkinStorage.setPlayerSkin(p.getName(), skin);
                             SkinApplier.applySkin(p);
                             p.sendMessage(new TextComponent(Locale.SKIN_CHANGE_SUCCESS));
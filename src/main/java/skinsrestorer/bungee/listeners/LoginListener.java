@@ -1,5 +1,6 @@
 package skinsrestorer.bungee.listeners;
 
+import net.md_5.bungee.api.event.PlayerDisconnectEvent;
 import net.md_5.bungee.api.event.ServerSwitchEvent;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.event.EventHandler;
@@ -7,6 +8,7 @@ import skinsrestorer.bungee.SkinApplier;
 import skinsrestorer.bungee.SkinsRestorer;
 import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.Locale;
+import skinsrestorer.shared.storage.SkinStorage;
 import skinsrestorer.shared.utils.C;
 
 import java.util.concurrent.TimeUnit;
@@ -20,6 +22,10 @@ public class LoginListener implements Listener {
                 && e.getPlayer().hasPermission("skinsrestorer.cmds"))
             e.getPlayer().sendMessage(C.c(Locale.OUTDATED));
 
+        final String name = e.getPlayer().getName();
+        SkinsRestorer.getInstance().getProxy().getScheduler().runAsync(SkinsRestorer.getInstance(),
+                () -> SkinStorage.getRefresher().joined(name));
+
         if (Config.DISABLE_ONJOIN_SKINS)
             return;
 
@@ -35,4 +41,9 @@ public class LoginListener implements Listener {
             SkinApplier.applySkin(e.getPlayer());
         }
     }
+
+    @EventHandler
+    public void onDisconnect(PlayerDisconnectEvent e) {
+        SkinStorage.getRefresher().quit(e.getPlayer().getName());
+    }
 }
@@ -1,8 +1,8 @@
 package skinsrestorer.shared.api;
 
 import org.bukkit.Bukkit;
+import skinsrestorer.shared.sources.SkinSources;
 import skinsrestorer.shared.storage.SkinStorage;
-import skinsrestorer.shared.utils.MojangAPI;
 import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
 
 import java.io.ByteArrayOutputStream;
@@ -99,7 +99,7 @@ public class SkinsRestorerAPI {
                 public void run() {
 
                     try {
-                        MojangAPI.getUUID(skinName);
+                        SkinSources.getSkin(skinName);
                         SkinStorage.setPlayerSkin(playerName, skinName);
                         SkinStorage.setSkinData(skinName, SkinStorage.getOrCreateSkinForPlayer(skinName));
 
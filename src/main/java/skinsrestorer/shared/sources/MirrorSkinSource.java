@@ -0,0 +1,65 @@
+package skinsrestorer.shared.sources;
+
+import skinsrestorer.shared.storage.Config;
+import skinsrestorer.shared.storage.Locale;
+import skinsrestorer.shared.utils.HttpClient;
+import skinsrestorer.shared.utils.MojangAPI;
+import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A mirror answering like Mojang's sessionserver. The url may contain
+ * %name% or %uuid%, the latter costs a uuid lookup at Mojang first.
+ */
+public class MirrorSkinSource implements SkinSource {
+
+    private final String url;
+    private final String name;
+
+    public MirrorSkinSource(String url) {
+        this.url = url;
+        String host;
+        try {
+            host = new URL(url.replace("%name%", "x").replace("%uuid%", "x")).getAuthority();
+        } catch (IOException e) {
+            host = url;
+        }
+        this.name = "Mirror " + host;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getSkin(String skin, boolean background) throws SkinRequestException {
+        String target = url.replace("%name%", skin);
+        if (target.contains("%uuid%"))
+            target = target.replace("%uuid%", MojangAPI.getUUID(skin, background));
+
+        try {
+            HttpClient.Response response = HttpClient.get(target, null, getTimeout(background));
+
+            if (response.getCode() >= 400 || response.getBody().isEmpty())
+                throw new SkinRequestException(Locale.ALT_API_FAILED);
+
+            return MojangAPI.parseSkinProperty(response.getBody());
+        } catch (IOException e) {
+            throw new SkinRequestException(Locale.ALT_API_FAILED);
+        }
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    @Override
+    public long getTimeout(boolean background) {
+        return TimeUnit.SECONDS.toMillis(Config.SOURCES_TIMEOUT_MIRRORS);
+    }
+}
@@ -0,0 +1,44 @@
+package skinsrestorer.shared.sources;
+
+import skinsrestorer.shared.storage.Config;
+import skinsrestorer.shared.utils.MojangAPI;
+import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mojang's own API, requests count against its rate limits
+ */
+public class MojangSkinSource implements SkinSource {
+
+    @Override
+    public String getName() {
+        return "Mojang";
+    }
+
+    @Override
+    public Object getSkin(String name, boolean background) throws SkinRequestException {
+        return MojangAPI.getSkinProperty(MojangAPI.getUUID(name, background), background);
+    }
+
+    @Override
+    public CompletableFuture<Object> getSkinAsync(final String name, final boolean background, Executor exe) {
+        // the requests run on the HTTP pool, nothing waits for them in between
+        return MojangAPI.getUUIDAsync(name, background)
+                .thenCompose(uuid -> MojangAPI.getSkinPropertyAsync(uuid, background));
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    @Override
+    public long getTimeout(boolean background) {
+        // waiting for the rate limit doesn't count
+        int wait = background ? Config.RATE_LIMIT_BACKGROUND_WAIT : Config.RATE_LIMIT_MAX_WAIT;
+        return TimeUnit.SECONDS.toMillis(Config.SOURCES_TIMEOUT_MOJANG + wait);
+    }
+}
@@ -0,0 +1,33 @@
+package skinsrestorer.shared.sources;
+
+import skinsrestorer.shared.storage.Config;
+import skinsrestorer.shared.utils.MojangAPI;
+import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mojang's API through the proxy pool, for when it can't be reached directly
+ */
+public class ProxySkinSource implements SkinSource {
+
+    @Override
+    public String getName() {
+        return "Proxies";
+    }
+
+    @Override
+    public Object getSkin(String name, boolean background) throws SkinRequestException {
+        return MojangAPI.getSkinPropertyProxy(MojangAPI.getUUIDProxy(name));
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    @Override
+    public long getTimeout(boolean background) {
+        return TimeUnit.SECONDS.toMillis(Config.SOURCES_TIMEOUT_PROXIES);
+    }
+}
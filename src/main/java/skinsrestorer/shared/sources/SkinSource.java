@@ -0,0 +1,50 @@
+package skinsrestorer.shared.sources;
+
+import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Somewhere skins can be looked up, the chain in {@link SkinSources} asks
+ * them in the configured order.
+ */
+public interface SkinSource {
+
+    String getName();
+
+    /**
+     * @param name       - Skin name
+     * @param background - Whether the lookup may wait for interactive ones
+     * @return Property object, null if the profile exists but has no skin
+     * @throws SkinRequestException - NOT_PREMIUM if there is no such profile,
+     *                              any other reason if the source failed
+     */
+    Object getSkin(String name, boolean background) throws SkinRequestException;
+
+    /**
+     * Same as {@link #getSkin(String, boolean)} without blocking, runs it on
+     * the executor unless the source can wait without holding a thread
+     */
+    default CompletableFuture<Object> getSkinAsync(final String name, final boolean background, Executor exe) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getSkin(name, background);
+            } catch (SkinRequestException e) {
+                throw new CompletionException(e);
+            }
+        }, exe);
+    }
+
+    /**
+     * @return Whether the skins come from outside, those get stored
+     */
+    boolean isRemote();
+
+    /**
+     * @return Milliseconds a lookup may take, 0 to run it on the calling
+     * thread without a deadline
+     */
+    long getTimeout(boolean background);
+}
@@ -0,0 +1,417 @@
+package skinsrestorer.shared.sources;
+
+import skinsrestorer.shared.storage.Config;
+import skinsrestorer.shared.storage.Locale;
+import skinsrestorer.shared.storage.SkinStorage;
+import skinsrestorer.shared.utils.CircuitBreaker;
+import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Ordered chain of skin sources.
+ * <p>
+ * A lookup asks one source after the other until one answers. NOT_PREMIUM is
+ * an answer as well and ends the lookup, failures and timeouts move on to the
+ * next source. Every source has its own circuit breaker, so one that keeps
+ * failing gets skipped for a while instead of costing its timeout each time.
+ * <p>
+ * With hedging enabled, a remote source that hasn't answered within its usual
+ * (percentile) latency gets raced against the next source, the first answer
+ * wins. Hedges are paid from a budget that grows with the requests sent, so
+ * they can't more than slightly raise the load.
+ */
+public class SkinSources {
+
+    // a source needs this many answers before its percentile latency means anything
+    private static final int MIN_SAMPLES = 10;
+    private static final double MAX_HEDGE_TOKENS = 10;
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SkinsRestorer Source Deadlines");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicLong hedges = new AtomicLong();
+    private static final AtomicLong hedgesWon = new AtomicLong();
+    private static double hedgeTokens;
+    private static List<Link> chain = build();
+
+    /**
+     * Builds the chain from the config, call it after the config got loaded
+     */
+    public static void init() {
+        chain = build();
+    }
+
+    private static List<Link> build() {
+        List<Link> links = new ArrayList<>();
+        List<String> order = Config.SOURCES_ORDER;
+
+        if (order == null || order.isEmpty())
+            return links;
+
+        for (String source : order)
+            switch (source.toLowerCase()) {
+                case "stored":
+                    links.add(new Link(new StoredSkinSource()));
+                    break;
+                case "mojang":
+                    links.add(new Link(new MojangSkinSource()));
+                    break;
+                case "mirrors":
+                    if (Config.SOURCES_MIRRORS != null)
+                        for (String url : Config.SOURCES_MIRRORS)
+                            links.add(new Link(new MirrorSkinSource(url)));
+                    break;
+                case "proxies":
+                    links.add(new Link(new ProxySkinSource()));
+                    break;
+                default:
+                    System.out.println("[SkinsRestorer] Unknown skin source '" + source + "', skipping it.");
+            }
+
+        return links;
+    }
+
+    /**
+     * Looks the skin up in every source, skins from remote sources get stored
+     *
+     * @return Property object, null if the skin doesn't exist
+     * @throws SkinRequestException - NOT_PREMIUM or why the last source failed
+     */
+    public static Object getSkin(String name) throws SkinRequestException {
+        return lookup(name, false, true);
+    }
+
+    /**
+     * Looks the skin up in the remote sources only, nothing gets stored
+     *
+     * @param background - Whether the lookup may wait for interactive ones
+     */
+    public static Object fetchSkin(String name, boolean background) throws SkinRequestException {
+        return lookup(name, background, false);
+    }
+
+    private static Object lookup(String name, boolean background, boolean stored) throws SkinRequestException {
+        SkinRequestException failure = null;
+        List<Link> links = new ArrayList<>();
+
+        for (Link link : chain)
+            if (stored || link.source.isRemote())
+                links.add(link);
+
+        for (int i = 0; i < links.size(); i++) {
+            Link link = links.get(i);
+            Link next = i + 1 < links.size() ? links.get(i + 1) : null;
+            CompletableFuture<Object> answer = link.start(name, background);
+
+            if (Config.SOURCES_HEDGING_ENABLED && link.source.isRemote() && next != null && next.source.isRemote()) {
+                earnHedge();
+                long delay = link.getLatencyPercentile(Config.SOURCES_HEDGING_PERCENTILE);
+
+                if (delay >= 0 && !settles(answer, delay) && next.breaker.getState() != CircuitBreaker.State.OPEN
+                        && spendHedge()) {
+                    hedges.incrementAndGet();
+                    answer = first(answer, next.start(name, background));
+                    // the next source got asked already
+                    i++;
+                }
+            }
+
+            try {
+                Object skin = await(answer);
+
+                if (skin != null) {
+                    if (stored && link.source.isRemote())
+                        SkinStorage.setSkinData(name, skin);
+                    return skin;
+                }
+
+                // a remote source that answered knows the profile has no skin
+                if (link.source.isRemote())
+                    return null;
+            } catch (SkinRequestException e) {
+                if (Locale.NOT_PREMIUM.equals(e.getReason()))
+                    throw e;
+                failure = e;
+            }
+        }
+
+        if (failure != null)
+            throw failure;
+        if (stored)
+            return null;
+        throw new SkinRequestException(Locale.ALT_API_FAILED);
+    }
+
+    /**
+     * @return Whether the request finished within the time
+     */
+    private static boolean settles(CompletableFuture<?> future, long millis) {
+        try {
+            future.get(millis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+        }
+        return true;
+    }
+
+    /**
+     * Races the primary request against the hedge. An answer (NOT_PREMIUM
+     * included) wins right away, the loser gets cancelled.
+     */
+    private static CompletableFuture<Object> first(final CompletableFuture<Object> primary,
+                                                   final CompletableFuture<Object> hedge) {
+        final CompletableFuture<Object> first = new CompletableFuture<>();
+        final AtomicInteger left = new AtomicInteger(2);
+
+        primary.whenComplete(answer(first, left, false));
+        hedge.whenComplete(answer(first, left, true));
+        first.whenComplete((skin, t) -> {
+            primary.cancel(true);
+            hedge.cancel(true);
+        });
+
+        return first;
+    }
+
+    private static BiConsumer<Object, Throwable> answer(final CompletableFuture<Object> first,
+                                                        final AtomicInteger left, final boolean hedge) {
+        return (skin, t) -> {
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+
+            if (cause == null || (cause instanceof SkinRequestException
+                    && Locale.NOT_PREMIUM.equals(((SkinRequestException) cause).getReason()))) {
+                boolean won = cause == null ? first.complete(skin) : first.completeExceptionally(cause);
+                if (won && hedge)
+                    hedgesWon.incrementAndGet();
+            } else if (left.decrementAndGet() == 0) {
+                first.completeExceptionally(cause);
+            }
+        };
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws SkinRequestException {
+        try {
+            return future.join();
+        } catch (CancellationException e) {
+            throw new SkinRequestException(Locale.ALT_API_FAILED);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SkinRequestException)
+                throw (SkinRequestException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new SkinRequestException(String.valueOf(e.getCause()));
+        }
+    }
+
+    private static synchronized void earnHedge() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + Config.SOURCES_HEDGING_BUDGET / 100D);
+    }
+
+    private static synchronized boolean spendHedge() {
+        if (hedgeTokens < 1)
+            return false;
+        hedgeTokens--;
+        return true;
+    }
+
+    /**
+     * @return The sources in the order they are asked
+     */
+    public static List<Link> getChain() {
+        return new ArrayList<>(chain);
+    }
+
+    /**
+     * @return Human readable state of every source
+     */
+    public static List<String> getStatus() {
+        List<String> status = new ArrayList<>();
+        for (Link link : chain)
+            status.add(Locale.STATUS_SOURCE.replace("%source%", link.source.getName())
+                    .replace("%state%", link.breaker.getState().name().toLowerCase().replace('_', ' '))
+                    .replace("%requests%", String.valueOf(link.requests.get()))
+                    .replace("%failures%", String.valueOf(link.failures.get()))
+                    .replace("%timeouts%", String.valueOf(link.timeouts.get()))
+                    .replace("%rejected%", String.valueOf(link.rejected.get()))
+                    .replace("%latency%", String.valueOf(link.getAverageLatency())));
+        if (Config.SOURCES_HEDGING_ENABLED)
+            status.add(Locale.STATUS_HEDGING.replace("%hedged%", String.valueOf(hedges.get()))
+                    .replace("%won%", String.valueOf(hedgesWon.get())));
+        return status;
+    }
+
+    /**
+     * A source in the chain with its circuit breaker and metrics
+     */
+    public static class Link {
+
+        private final SkinSource source;
+        private final CircuitBreaker breaker = new CircuitBreaker(Config.SOURCES_BREAKER_FAILURES,
+                TimeUnit.SECONDS.toMillis(Config.SOURCES_BREAKER_OPEN_FOR));
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong latency = new AtomicLong();
+        // latencies of the last answers, for the percentile
+        private final long[] samples = new long[100];
+        private int sampleIndex;
+
+        private Link(SkinSource source) {
+            this.source = source;
+        }
+
+        /**
+         * Sends the request, the future fails with ALT_API_FAILED when the
+         * source is skipped or takes longer than its timeout
+         */
+        private CompletableFuture<Object> start(final String name, final boolean background) {
+            final CompletableFuture<Object> result = new CompletableFuture<>();
+
+            if (!breaker.allowRequest()) {
+                rejected.incrementAndGet();
+                result.completeExceptionally(new SkinRequestException(Locale.ALT_API_FAILED));
+                return result;
+            }
+
+            requests.incrementAndGet();
+            final long start = System.currentTimeMillis();
+            // the request and its deadline race, only the first counts
+            final AtomicBoolean settled = new AtomicBoolean();
+            long timeout = source.getTimeout(background);
+            if (timeout <= 0) {
+                try {
+                    settle(settled, start, source.getSkin(name, background), null, result);
+                } catch (Throwable t) {
+                    settle(settled, start, null, t, result);
+                }
+                return result;
+            }
+
+            source.getSkinAsync(name, background, SkinStorage.getExecutor())
+                    .whenComplete((skin, t) -> settle(settled, start, skin, t, result));
+            final ScheduledFuture<?> deadline = timer.schedule(() -> {
+                if (settled.compareAndSet(false, true)) {
+                    timeouts.incrementAndGet();
+                    failed();
+                    result.completeExceptionally(new SkinRequestException(Locale.ALT_API_FAILED));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            // a cancelled (hedged) request still gets its outcome recorded when it ends
+            result.whenComplete((skin, t) -> deadline.cancel(false));
+
+            return result;
+        }
+
+        private void settle(AtomicBoolean settled, long start, Object skin, Throwable t, CompletableFuture<Object> result) {
+            if (t instanceof CompletionException && t.getCause() != null)
+                t = t.getCause();
+
+            if (settled.compareAndSet(false, true))
+                // NOT_PREMIUM means the source answered, there just is no such profile
+                if (t == null || (t instanceof SkinRequestException
+                        && Locale.NOT_PREMIUM.equals(((SkinRequestException) t).getReason())))
+                    succeeded(start);
+                else
+                    failed();
+
+            if (t == null)
+                result.complete(skin);
+            else
+                result.completeExceptionally(t);
+        }
+
+        private void succeeded(long start) {
+            long millis = System.currentTimeMillis() - start;
+            successes.incrementAndGet();
+            latency.addAndGet(millis);
+            synchronized (samples) {
+                samples[sampleIndex++ % samples.length] = millis;
+            }
+            breaker.recordSuccess();
+        }
+
+        private void failed() {
+            failures.incrementAndGet();
+            breaker.recordFailure();
+        }
+
+        public SkinSource getSource() {
+            return source;
+        }
+
+        public CircuitBreaker getBreaker() {
+            return breaker;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getSuccesses() {
+            return successes.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        /**
+         * @return Requests the open circuit breaker didn't let through
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        /**
+         * @param percentile - 0 to 100
+         * @return Milliseconds within which that share of the last answers
+         * came, -1 if there weren't enough answers yet
+         */
+        public long getLatencyPercentile(double percentile) {
+            long[] sorted;
+            synchronized (samples) {
+                if (sampleIndex < MIN_SAMPLES)
+                    return -1;
+                sorted = Arrays.copyOf(samples, Math.min(sampleIndex, samples.length));
+            }
+
+            Arrays.sort(sorted);
+            int i = (int) Math.ceil(percentile / 100D * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+        }
+
+        /**
+         * @return Average milliseconds of the successful requests
+         */
+        public long getAverageLatency() {
+            long n = successes.get();
+            return n == 0 ? 0 : latency.get() / n;
+        }
+    }
+}
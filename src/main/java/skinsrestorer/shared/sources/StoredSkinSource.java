@@ -0,0 +1,29 @@
+package skinsrestorer.shared.sources;
+
+import skinsrestorer.shared.storage.SkinStorage;
+
+/**
+ * Skins that are stored already, including expired ones
+ */
+public class StoredSkinSource implements SkinSource {
+
+    @Override
+    public String getName() {
+        return "Stored";
+    }
+
+    @Override
+    public Object getSkin(String name, boolean background) {
+        return SkinStorage.getSkinData(name);
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public long getTimeout(boolean background) {
+        return 0;
+    }
+}
@@ -14,7 +14,42 @@ public class Config {
     public static boolean SKINWITHOUTPERM = false;
     public static int SKIN_EXPIRES_AFTER = 1;
     public static int SKIN_CHANGE_COOLDOWN = 30;
+    public static int SKIN_CACHE_SIZE = 1000;
+    public static int PLAYER_CACHE_SIZE = 5000;
+    public static int PLAYER_CACHE_EXPIRES_AFTER = 5;
+    public static int UUID_CACHE_SIZE = 5000;
+    public static int UUID_CACHE_EXPIRES_AFTER = 60;
+    public static int NOT_PREMIUM_EXPIRES_AFTER = 10;
+    public static boolean UUID_CACHE_PERSIST = true;
+    public static int RATE_LIMIT_PROFILES = 60;
+    public static int RATE_LIMIT_SESSIONSERVER = 60;
+    public static int RATE_LIMIT_MAX_WAIT = 5;
+    public static int RATE_LIMIT_BACKGROUND_WAIT = 60;
+    public static int MOJANG_RETRIES = 2;
+    public static int MOJANG_BREAKER_FAILURES = 5;
+    public static int MOJANG_BREAKER_OPEN_FOR = 30;
+    public static int MOJANG_BREAKER_MAX_OPEN_FOR = 300;
+    public static boolean PROXIES_FETCH_LIST = true;
+    public static List<String> PROXIES = null;
+    public static List<String> SOURCES_ORDER = null;
+    public static List<String> SOURCES_MIRRORS = null;
+    public static int SOURCES_TIMEOUT_MOJANG = 10;
+    public static int SOURCES_TIMEOUT_MIRRORS = 5;
+    public static int SOURCES_TIMEOUT_PROXIES = 15;
+    public static int SOURCES_BREAKER_FAILURES = 5;
+    public static int SOURCES_BREAKER_OPEN_FOR = 30;
+    public static boolean SOURCES_HEDGING_ENABLED = false;
+    public static int SOURCES_HEDGING_PERCENTILE = 95;
+    public static int SOURCES_HEDGING_BUDGET = 10;
     //public static String ALT_PROPERTY_URL = "http://mcapi.de/api/user/"; *just leave it here just for history books*//
+    public static String STORAGE_TYPE = "file";
+    public static int STORAGE_SEGMENT_SIZE = 16;
+    public static boolean WRITE_BEHIND_ENABLED = false;
+    public static int WRITE_BEHIND_BATCH_SIZE = 100;
+    public static int WRITE_BEHIND_FLUSH_INTERVAL = 2;
+    public static boolean REFRESH_ENABLED = true;
+    public static int REFRESH_REQUESTS_PER_MINUTE = 60;
+    public static int REFRESH_UNUSED_DAYS = 14;
     public static boolean USE_MYSQL = false;
     public static String MYSQL_HOST = "localhost";
     public static String MYSQL_PORT = "3306";
@@ -23,6 +58,11 @@ public class Config {
     public static String MYSQL_PLAYERTABLE = "Skins";
     public static String MYSQL_USERNAME = "admin";
     public static String MYSQL_PASSWORD = "pass";
+    public static int MYSQL_POOL_SIZE = 10;
+    public static int MYSQL_POOL_MAX_LIFETIME = 30;
+    public static int MYSQL_POOL_CONNECTION_TIMEOUT = 5;
+    public static int MYSQL_POOL_LEAK_THRESHOLD = 0;
+    public static int MYSQL_POOL_STATEMENT_CACHE = 32;
     public static boolean DEFAULT_SKINS_ENABLED = false;
     public static boolean DISABLED_SKINS_ENABLED = false;
     public static List<String> DEFAULT_SKINS = null;
@@ -46,9 +86,41 @@ public class Config {
         SKINWITHOUTPERM = config.getBoolean("SkinWithoutPerm", SKINWITHOUTPERM);
         SKIN_CHANGE_COOLDOWN = config.getInt("SkinChangeCooldown", SKIN_CHANGE_COOLDOWN);
         SKIN_EXPIRES_AFTER = config.getInt("SkinExpiresAfter", SKIN_EXPIRES_AFTER);
+        SKIN_CACHE_SIZE = config.getInt("Cache.MaxSkins", SKIN_CACHE_SIZE);
+        PLAYER_CACHE_SIZE = config.getInt("Cache.MaxPlayers", PLAYER_CACHE_SIZE);
+        PLAYER_CACHE_EXPIRES_AFTER = config.getInt("Cache.PlayersExpireAfter", PLAYER_CACHE_EXPIRES_AFTER);
+        UUID_CACHE_SIZE = config.getInt("Cache.MaxUUIDs", UUID_CACHE_SIZE);
+        UUID_CACHE_EXPIRES_AFTER = config.getInt("Cache.UUIDsExpireAfter", UUID_CACHE_EXPIRES_AFTER);
+        NOT_PREMIUM_EXPIRES_AFTER = config.getInt("Cache.NotPremiumExpireAfter", NOT_PREMIUM_EXPIRES_AFTER);
+        UUID_CACHE_PERSIST = config.getBoolean("Cache.PersistUUIDs", UUID_CACHE_PERSIST);
+        RATE_LIMIT_PROFILES = config.getInt("RateLimit.Profiles", RATE_LIMIT_PROFILES);
+        RATE_LIMIT_SESSIONSERVER = config.getInt("RateLimit.SessionServer", RATE_LIMIT_SESSIONSERVER);
+        RATE_LIMIT_MAX_WAIT = config.getInt("RateLimit.MaxWait", RATE_LIMIT_MAX_WAIT);
+        RATE_LIMIT_BACKGROUND_WAIT = config.getInt("RateLimit.BackgroundMaxWait", RATE_LIMIT_BACKGROUND_WAIT);
+        MOJANG_RETRIES = config.getInt("Mojang.Retries", MOJANG_RETRIES);
+        MOJANG_BREAKER_FAILURES = config.getInt("Mojang.CircuitBreaker.Failures", MOJANG_BREAKER_FAILURES);
+        MOJANG_BREAKER_OPEN_FOR = config.getInt("Mojang.CircuitBreaker.OpenFor", MOJANG_BREAKER_OPEN_FOR);
+        MOJANG_BREAKER_MAX_OPEN_FOR = config.getInt("Mojang.CircuitBreaker.MaxOpenFor", MOJANG_BREAKER_MAX_OPEN_FOR);
+        PROXIES_FETCH_LIST = config.getBoolean("Proxies.FetchList", PROXIES_FETCH_LIST);
+        SOURCES_TIMEOUT_MOJANG = config.getInt("Sources.Timeouts.Mojang", SOURCES_TIMEOUT_MOJANG);
+        SOURCES_TIMEOUT_MIRRORS = config.getInt("Sources.Timeouts.Mirrors", SOURCES_TIMEOUT_MIRRORS);
+        SOURCES_TIMEOUT_PROXIES = config.getInt("Sources.Timeouts.Proxies", SOURCES_TIMEOUT_PROXIES);
+        SOURCES_BREAKER_FAILURES = config.getInt("Sources.CircuitBreaker.Failures", SOURCES_BREAKER_FAILURES);
+        SOURCES_BREAKER_OPEN_FOR = config.getInt("Sources.CircuitBreaker.OpenFor", SOURCES_BREAKER_OPEN_FOR);
+        SOURCES_HEDGING_ENABLED = config.getBoolean("Sources.Hedging.Enabled", SOURCES_HEDGING_ENABLED);
+        SOURCES_HEDGING_PERCENTILE = config.getInt("Sources.Hedging.Percentile", SOURCES_HEDGING_PERCENTILE);
+        SOURCES_HEDGING_BUDGET = config.getInt("Sources.Hedging.Budget", SOURCES_HEDGING_BUDGET);
         DEFAULT_SKINS_ENABLED = config.getBoolean("DefaultSkins.Enabled", DEFAULT_SKINS_ENABLED);
         DISABLED_SKINS_ENABLED = config.getBoolean("DisabledSkins.Enabled", DISABLED_SKINS_ENABLED);
         MULTIBUNGEE_ENABLED = config.getBoolean("MultiBungee.Enabled", MULTIBUNGEE_ENABLED);
+        STORAGE_TYPE = config.getString("Storage.Type", STORAGE_TYPE);
+        STORAGE_SEGMENT_SIZE = config.getInt("Storage.SegmentSize", STORAGE_SEGMENT_SIZE);
+        WRITE_BEHIND_ENABLED = config.getBoolean("Storage.WriteBehind.Enabled", WRITE_BEHIND_ENABLED);
+        WRITE_BEHIND_BATCH_SIZE = config.getInt("Storage.WriteBehind.BatchSize", WRITE_BEHIND_BATCH_SIZE);
+        WRITE_BEHIND_FLUSH_INTERVAL = config.getInt("Storage.WriteBehind.FlushInterval", WRITE_BEHIND_FLUSH_INTERVAL);
+        REFRESH_ENABLED = config.getBoolean("Refresh.Enabled", REFRESH_ENABLED);
+        REFRESH_REQUESTS_PER_MINUTE = config.getInt("Refresh.RequestsPerMinute", REFRESH_REQUESTS_PER_MINUTE);
+        REFRESH_UNUSED_DAYS = config.getInt("Refresh.UnusedDays", REFRESH_UNUSED_DAYS);
         USE_MYSQL = config.getBoolean("MySQL.Enabled", USE_MYSQL);
         MYSQL_HOST = config.getString("MySQL.Host", MYSQL_HOST);
         MYSQL_PORT = config.getString("MySQL.Port", MYSQL_PORT);
@@ -57,6 +129,12 @@ public class Config {
         MYSQL_PLAYERTABLE = config.getString("MySQL.PlayerTable", MYSQL_PLAYERTABLE);
         MYSQL_USERNAME = config.getString("MySQL.Username", MYSQL_USERNAME);
         MYSQL_PASSWORD = config.getString("MySQL.Password", MYSQL_PASSWORD);
+        MYSQL_POOL_SIZE = config.getInt("MySQL.Pool.MaxSize", MYSQL_POOL_SIZE);
+        MYSQL_POOL_MAX_LIFETIME = config.getInt("MySQL.Pool.MaxLifetime", MYSQL_POOL_MAX_LIFETIME);
+        MYSQL_POOL_CONNECTION_TIMEOUT = config.getInt("MySQL.Pool.ConnectionTimeout", MYSQL_POOL_CONNECTION_TIMEOUT);
+        MYSQL_POOL_LEAK_THRESHOLD = config.getInt("MySQL.Pool.LeakThreshold", MYSQL_POOL_LEAK_THRESHOLD);
+        MYSQL_POOL_STATEMENT_CACHE = config.getInt("MySQL.Pool.StatementCache", MYSQL_POOL_STATEMENT_CACHE);
+        MySQLStorageBackend.prepareStatements();
 
         if (config.get("Updater.Enabled") == null) {
             config.set("Updater.Enabled", true);
@@ -83,6 +161,19 @@ public class Config {
             config.set("DefaultSkins.Names", DEFAULT_SKINS.toArray());
         }
 
+        PROXIES = config.getStringList("Proxies.List");
+
+        SOURCES_ORDER = config.getStringList("Sources.Order");
+        if (SOURCES_ORDER == null || SOURCES_ORDER.isEmpty()) {
+            SOURCES_ORDER = new ArrayList<>();
+            SOURCES_ORDER.add("Stored");
+            SOURCES_ORDER.add("Mojang");
+            SOURCES_ORDER.add("Mirrors");
+            SOURCES_ORDER.add("Proxies");
+            config.set("Sources.Order", SOURCES_ORDER.toArray());
+        }
+        SOURCES_MIRRORS = config.getStringList("Sources.Mirrors");
+
         DISABLED_SKINS = config.getStringList("DisabledSkins.Names");
         if (DISABLED_SKINS == null || DISABLED_SKINS.isEmpty()) {
             DISABLED_SKINS = new ArrayList<>();
@@ -0,0 +1,226 @@
+package skinsrestorer.shared.storage;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Flat-file backend, one .skin file per skin in Skins/ and one .player file
+ * per player in Players/.
+ */
+public class FileStorageBackend implements SkinStorageBackend {
+
+    private final File skinsFolder;
+    private final File playersFolder;
+    private final Executor exe;
+
+    public FileStorageBackend(File pluginFolder, Executor exe) {
+        this.skinsFolder = new File(pluginFolder, "Skins");
+        this.playersFolder = new File(pluginFolder, "Players");
+        this.exe = exe;
+        skinsFolder.mkdirs();
+        playersFolder.mkdirs();
+    }
+
+    private File getSkinFile(String name) {
+        return new File(skinsFolder, name + ".skin");
+    }
+
+    private File getPlayerFile(String name) {
+        return new File(playersFolder, name + ".player");
+    }
+
+    @Override
+    public CompletableFuture<SkinRecord> getSkin(final String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return readSkin(name);
+            } catch (IOException e) {
+                throw new StorageException(e, true);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SkinRecord>> getSkins(final Collection<String> names) {
+        // one task reading the files one after another instead of a task per file
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, SkinRecord> records = new HashMap<>();
+
+            for (String name : names)
+                try {
+                    SkinRecord record = readSkin(name);
+                    if (record != null)
+                        records.put(name, record);
+                } catch (IOException e) {
+                }
+
+            return records;
+        }, exe);
+    }
+
+    SkinRecord readSkin(String name) throws IOException {
+        File skinFile = getSkinFile(name);
+
+        if (!skinFile.exists())
+            return null;
+
+        String value = "", signature = "", timestamp = "";
+        for (String line : readLines(skinFile, 3))
+            if (line != null)
+                if (value.isEmpty()) {
+                    value = line;
+                } else if (signature.isEmpty()) {
+                    signature = line;
+                } else {
+                    timestamp = line;
+                }
+
+        try {
+            return new SkinRecord(value, signature, Long.parseLong(timestamp));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid timestamp in " + skinFile.getName());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> setSkin(final String name, final SkinRecord record) {
+        return CompletableFuture.runAsync(() -> {
+            try (FileWriter writer = new FileWriter(getSkinFile(name))) {
+                writer.write(record.getValue() + "\n" + record.getSignature() + "\n" + record.getTimestamp());
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeSkin(final String name) {
+        return CompletableFuture.runAsync(() -> {
+            File skinFile = getSkinFile(name);
+
+            if (skinFile.exists())
+                skinFile.delete();
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<String> getPlayerSkin(final String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return readPlayerSkin(name);
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerSkins(final Collection<String> names) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, String> skins = new HashMap<>();
+
+            for (String name : names)
+                try {
+                    String skin = readPlayerSkin(name);
+                    if (skin != null)
+                        skins.put(name, skin);
+                } catch (IOException e) {
+                }
+
+            return skins;
+        }, exe);
+    }
+
+    String readPlayerSkin(String name) throws IOException {
+        File playerFile = getPlayerFile(name);
+
+        if (!playerFile.exists())
+            return null;
+
+        return readLines(playerFile, 1)[0];
+    }
+
+    /**
+     * Reads the first lines of a file with a single read, skin and player
+     * files are far smaller than the buffers of a reader
+     *
+     * @return Lines without their terminators, null past the end of the file
+     */
+    static String[] readLines(File file, int count) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        String[] lines = new String[count];
+        int start = 0;
+
+        for (int i = 0; i < count && start < data.length; i++) {
+            int end = start;
+            while (end < data.length && data[end] != '\n' && data[end] != '\r')
+                end++;
+
+            lines[i] = new String(data, start, end - start);
+            start = end + (end + 1 < data.length && data[end] == '\r' && data[end + 1] == '\n' ? 2 : 1);
+        }
+
+        return lines;
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerSkin(final String name, final String skin) {
+        return CompletableFuture.runAsync(() -> {
+            try (FileWriter writer = new FileWriter(getPlayerFile(name))) {
+                writer.write(skin);
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> removePlayerSkin(final String name) {
+        return CompletableFuture.runAsync(() -> {
+            File playerFile = getPlayerFile(name);
+
+            if (playerFile.exists())
+                playerFile.delete();
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getSkinNames() {
+        return CompletableFuture.supplyAsync(this::listSkins, exe);
+    }
+
+    List<String> listSkins() {
+        return list(skinsFolder, ".skin");
+    }
+
+    List<String> listPlayers() {
+        return list(playersFolder, ".player");
+    }
+
+    private static List<String> list(File folder, String extension) {
+        List<String> names = new ArrayList<>();
+        String[] fileNames = folder.list();
+
+        if (fileNames != null)
+            for (String file : fileNames)
+                if (file.endsWith(extension))
+                    names.add(file.substring(0, file.length() - extension.length()));
+
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public void close() {
+    }
+}
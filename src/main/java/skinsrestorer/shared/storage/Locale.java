@@ -44,6 +44,15 @@ public class Locale {
     public static String RELOAD = "&2Config and Locale has been reloaded!";
     public static String NO_SKIN_DATA = "&4Error&8: &cNo skin data acquired! Does this player have a skin?";
     public static String STATUS_OK = "&aMojang API connection successful!";
+    public static String STATUS_CACHE = "&2%cache% cache&8: &f%size%&7/&f%max% &7entries, &f%hitrate%% &7hit rate";
+    public static String STATUS_WRITE_QUEUE = "&2Write queue&8: &f%depth% &7pending, &f%written% &7written, &f%coalesced% &7coalesced";
+    public static String STATUS_REFRESH_QUEUE = "&2Refresh queue&8: &f%scheduled% &7scheduled, &f%due% &7due, &f%running% &7running";
+    public static String STATUS_SOURCE = "&2%source% source&8: &f%state%&7, &f%requests% &7requests, &f%failures% &7failed, &f%timeouts% &7timed out, &f%rejected% &7skipped, &f%latency%ms &7average";
+    public static String STATUS_MYSQL_POOL = "&2MySQL pool&8: &f%active% &7active, &f%idle% &7idle of &f%max%&7, &f%wait%ms &7average wait, &f%timeouts% &7timed out, &f%leaks% &7leaked";
+    public static String STATUS_MYSQL_STATEMENTS = "&2MySQL statements&8: &f%hits% &7reused, &f%misses% &7prepared, &f%hitrate%% &7hit rate";
+    public static String STATUS_CIRCUIT = "&2%endpoint% endpoint&8: &f%state%&7, retrying in &f%retry%s";
+    public static String STATUS_HEDGING = "&2Hedging&8: &f%hedged% &7hedged requests, &f%won% &7won by the hedge";
+    public static String STATUS_RATE_LIMIT = "&2%endpoint% rate limit&8: &f%tokens%&7/&f%capacity% &7requests left, &f%waiting% &7waiting";
     public static String OUTDATED = "&4You are running an outdated version of SkinsRestorer!\n&cPlease update to the latest version on Spigot: \n&ehttps://www.spigotmc.org/resources/skinsrestorer.2124/";
     private static YamlConfig locale = new YamlConfig(
             "plugins" + File.separator + "SkinsRestorer" + File.separator + "", "msgs");
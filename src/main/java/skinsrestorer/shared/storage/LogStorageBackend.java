@@ -0,0 +1,665 @@
+package skinsrestorer.shared.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured backend storing every skin and player in a few append-only
+ * segment files under Data/ instead of one file per entry.
+ * <p>
+ * Each record is written as [length][body][crc32], the body starting with the
+ * record type and the key. An in-memory index maps every key to the position
+ * of its latest record and is rebuilt by scanning the segments on startup.
+ * Removals are written as tombstones. Sealed segments that are mostly dead
+ * records get compacted in the background by copying their live records to
+ * the active segment. Tombstones are only copied along while an older
+ * segment may still hold a record of the removed key.
+ */
+public class LogStorageBackend implements SkinStorageBackend {
+
+    private static final int MAGIC = 0x534B4C47;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+    private static final double COMPACT_THRESHOLD = 0.5;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+    private static final byte SKIN = 1;
+    private static final byte PLAYER = 2;
+    private static final byte SKIN_REMOVED = 3;
+    private static final byte PLAYER_REMOVED = 4;
+
+    private final File folder;
+    private final long segmentSize;
+    private final Executor exe;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Location> skins = new ConcurrentHashMap<>();
+    private final Map<String, Location> players = new ConcurrentHashMap<>();
+    // removed key -> oldest segment that may still hold a record of it
+    private final Map<String, Integer> removedSkins = new ConcurrentHashMap<>();
+    private final Map<String, Integer> removedPlayers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService compactor;
+    private volatile Segment active;
+
+    public LogStorageBackend(File pluginFolder, long segmentSize, Executor exe) throws IOException {
+        this.folder = new File(pluginFolder, "Data");
+        this.segmentSize = segmentSize;
+        this.exe = exe;
+        folder.mkdirs();
+
+        recover();
+
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SkinsRestorer Compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Rebuilds the index from the segment files. A torn record at the end of
+     * the newest segment (crash while writing) is cut off.
+     */
+    private void recover() throws IOException {
+        File[] files = folder.listFiles();
+        List<Integer> ids = new ArrayList<>();
+
+        if (files != null)
+            for (File file : files) {
+                Matcher m = SEGMENT_NAME.matcher(file.getName());
+                if (m.matches())
+                    ids.add(Integer.parseInt(m.group(1)));
+            }
+        Collections.sort(ids);
+
+        for (int i = 0; i < ids.size(); i++) {
+            Segment segment = new Segment(ids.get(i), segmentFile(ids.get(i)));
+            segments.put(segment.id, segment);
+
+            if (segment.channel.size() < HEADER_SIZE) {
+                // Crashed right after creating it
+                segment.channel.truncate(0);
+                writeHeader(segment);
+                continue;
+            }
+
+            long end = scan(segment);
+            if (end < segment.channel.size()) {
+                System.out.println("[SkinsRestorer] Dropping " + (segment.channel.size() - end)
+                        + " unreadable bytes at the end of " + segment.file.getName());
+                if (i == ids.size() - 1)
+                    segment.channel.truncate(end);
+            }
+            segment.size = end;
+        }
+
+        if (segments.isEmpty())
+            active = createSegment(0);
+        else
+            active = segments.lastEntry().getValue();
+    }
+
+    /**
+     * Reads every record of a segment into the index
+     *
+     * @return Position right after the last valid record
+     */
+    private long scan(Segment segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(segment.file.getName() + " is not a skin data segment");
+
+            long position = HEADER_SIZE;
+            while (true) {
+                int length;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE)
+                        return position;
+                    body = new byte[length];
+                    in.readFully(body);
+                    if (in.readInt() != crc(body))
+                        return position;
+                } catch (EOFException e) {
+                    return position;
+                }
+
+                Record record = decode(body);
+                Location location = new Location(segment, position, length + 8);
+                apply(record, location);
+                position += location.length;
+            }
+        }
+    }
+
+    private Map<String, Location> index(byte type) {
+        return type == SKIN || type == SKIN_REMOVED ? skins : players;
+    }
+
+    private Map<String, Integer> removed(byte type) {
+        return type == SKIN || type == SKIN_REMOVED ? removedSkins : removedPlayers;
+    }
+
+    private void apply(Record record, Location location) {
+        Location old;
+        Map<String, Integer> removed = removed(record.type);
+
+        if (record.type == SKIN || record.type == PLAYER) {
+            Integer first = removed.remove(record.key);
+            old = index(record.type).get(record.key);
+            location.first = old != null ? old.first : first != null ? first : location.segment.id;
+            index(record.type).put(record.key, location);
+            location.segment.live.addAndGet(location.length);
+        } else {
+            old = index(record.type).remove(record.key);
+            if (old != null)
+                removed.merge(record.key, old.first, Math::min);
+            else
+                removed.putIfAbsent(record.key, location.segment.id);
+        }
+
+        if (old != null)
+            old.segment.live.addAndGet(-old.length);
+    }
+
+    private File segmentFile(int id) {
+        return new File(folder, String.format("segment-%08d.log", id));
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, segmentFile(id));
+        writeHeader(segment);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static void writeHeader(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(segment.channel, header, 0);
+        segment.size = HEADER_SIZE;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining())
+            position += channel.write(buf, position);
+    }
+
+    private static int crc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Appends a record and points the index at it
+     *
+     * @param expected - Only write if the key still points there (compaction), null to always write
+     */
+    private synchronized void append(Record record, Location expected) throws IOException {
+        if (expected != null && index(record.type).get(record.key) != expected)
+            return;
+
+        write(record);
+    }
+
+    /**
+     * Copies a tombstone out of a segment being compacted, unless the key got
+     * a value in the meantime or no older segment can hold a record of it
+     */
+    private synchronized void carryTombstone(Record record, Segment segment) throws IOException {
+        if (index(record.type).containsKey(record.key))
+            return;
+
+        Integer first = removed(record.type).get(record.key);
+        if (first != null && first < segment.id && !segments.subMap(first, true, segment.id, false).isEmpty())
+            write(record);
+    }
+
+    private void write(Record record) throws IOException {
+        byte[] body = encode(record);
+        ByteBuffer buf = ByteBuffer.allocate(body.length + 8);
+        buf.putInt(body.length).put(body).putInt(crc(body)).flip();
+
+        if (active.size + buf.remaining() > segmentSize && active.size > HEADER_SIZE)
+            active = createSegment(active.id + 1);
+
+        Location location = new Location(active, active.size, buf.remaining());
+        writeFully(active.channel, buf, active.size);
+        active.size += location.length;
+        apply(record, location);
+    }
+
+    private Record read(Location location) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(location.length);
+        long position = location.offset;
+
+        while (buf.hasRemaining()) {
+            int read = location.segment.channel.read(buf, position);
+            if (read < 0)
+                throw new EOFException();
+            position += read;
+        }
+        buf.flip();
+
+        byte[] body = new byte[buf.getInt()];
+        buf.get(body);
+        if (buf.getInt() != crc(body))
+            throw new IOException("Checksum mismatch in " + location.segment.file.getName());
+
+        return decode(body);
+    }
+
+    /**
+     * Looks the key up in the index and reads its record, retrying when
+     * compaction moved it in the meantime
+     */
+    private Record lookup(Map<String, Location> index, String key) throws IOException {
+        while (true) {
+            Location location = index.get(key);
+
+            if (location == null)
+                return null;
+
+            try {
+                return read(location);
+            } catch (ClosedChannelException e) {
+                if (index.get(key) == location)
+                    throw e;
+            }
+        }
+    }
+
+    /**
+     * Looks several keys up, reading their records in file order so the
+     * disk sees one forward pass per segment instead of random reads
+     */
+    private Map<String, Record> lookup(final Map<String, Location> index, Collection<String> keys) throws IOException {
+        List<String> found = new ArrayList<>();
+        final Map<String, Location> locations = new HashMap<>();
+
+        for (String key : keys) {
+            Location location = index.get(key);
+            if (location != null && locations.put(key, location) == null)
+                found.add(key);
+        }
+
+        found.sort((a, b) -> {
+            Location la = locations.get(a), lb = locations.get(b);
+            if (la.segment != lb.segment)
+                return Integer.compare(la.segment.id, lb.segment.id);
+            return Long.compare(la.offset, lb.offset);
+        });
+
+        Map<String, Record> records = new HashMap<>();
+        for (String key : found) {
+            Record record;
+            try {
+                record = read(locations.get(key));
+            } catch (ClosedChannelException e) {
+                // compacted in the meantime, look it up again
+                record = lookup(index, key);
+            }
+            if (record != null)
+                records.put(key, record);
+        }
+
+        return records;
+    }
+
+    private static byte[] encode(Record record) throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(b);
+
+        out.writeByte(record.type);
+        out.writeUTF(record.key);
+
+        if (record.type == SKIN) {
+            writeString(out, record.skin.getValue());
+            writeString(out, record.skin.getSignature());
+            out.writeLong(record.skin.getTimestamp());
+        } else if (record.type == PLAYER) {
+            out.writeUTF(record.player);
+        }
+
+        out.close();
+        return b.toByteArray();
+    }
+
+    private static Record decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+
+        byte type = in.readByte();
+        String key = in.readUTF();
+
+        if (type == SKIN)
+            return new Record(type, key, new SkinRecord(readString(in), readString(in), in.readLong()), null);
+        else if (type == PLAYER)
+            return new Record(type, key, null, in.readUTF());
+        else if (type == SKIN_REMOVED || type == PLAYER_REMOVED)
+            return new Record(type, key, null, null);
+
+        throw new IOException("Unknown record type " + type);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rewrites the live records of sealed segments that are mostly garbage
+     * and deletes them
+     */
+    private void compact() {
+        for (Segment segment : segments.values()) {
+            if (segment == active)
+                continue;
+
+            long used = segment.size - HEADER_SIZE;
+            if (used > 0 && segment.live.get() >= used * COMPACT_THRESHOLD)
+                continue;
+
+            try {
+                compact(segment);
+            } catch (IOException e) {
+                System.out.println("[SkinsRestorer] Could not compact " + segment.file.getName() + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        int copiedFrom;
+        synchronized (this) {
+            copiedFrom = active.id;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)))) {
+            in.skipBytes(HEADER_SIZE);
+
+            long position = HEADER_SIZE;
+            while (position < segment.size) {
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                in.readInt();
+
+                Record record = decode(body);
+                Location location = new Location(segment, position, body.length + 8);
+                position += location.length;
+
+                if (record.type == SKIN || record.type == PLAYER) {
+                    Location current = index(record.type).get(record.key);
+                    if (current != null && current.segment == segment && current.offset == location.offset)
+                        append(record, current);
+                } else {
+                    carryTombstone(record, segment);
+                }
+            }
+        }
+
+        synchronized (this) {
+            // the copies have to be on disk before their only durable original goes
+            for (Segment copy : segments.tailMap(copiedFrom, true).values())
+                copy.channel.force(false);
+            segments.remove(segment.id);
+            segment.channel.close();
+        }
+        segment.file.delete();
+    }
+
+    private <T> CompletableFuture<T> supply(final IOSupplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return supplier.get();
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<SkinRecord> getSkin(final String name) {
+        return supply(() -> {
+            Record record = lookup(skins, name);
+            return record == null ? null : record.skin;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SkinRecord>> getSkins(final Collection<String> names) {
+        return supply(() -> {
+            Map<String, SkinRecord> found = new HashMap<>();
+            for (Map.Entry<String, Record> e : lookup(skins, names).entrySet())
+                found.put(e.getKey(), e.getValue().skin);
+            return found;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> setSkin(final String name, final SkinRecord record) {
+        return supply(() -> {
+            append(new Record(SKIN, name, record, null), null);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> removeSkin(final String name) {
+        return supply(() -> {
+            if (skins.containsKey(name))
+                append(new Record(SKIN_REMOVED, name, null, null), null);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> getPlayerSkin(final String name) {
+        return supply(() -> {
+            Record record = lookup(players, name);
+            return record == null ? null : record.player;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerSkins(final Collection<String> names) {
+        return supply(() -> {
+            Map<String, String> found = new HashMap<>();
+            for (Map.Entry<String, Record> e : lookup(players, names).entrySet())
+                found.put(e.getKey(), e.getValue().player);
+            return found;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerSkin(final String name, final String skin) {
+        return supply(() -> {
+            append(new Record(PLAYER, name, null, skin), null);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> removePlayerSkin(final String name) {
+        return supply(() -> {
+            if (players.containsKey(name))
+                append(new Record(PLAYER_REMOVED, name, null, null), null);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getSkinNames() {
+        return supply(() -> {
+            List<String> names = new ArrayList<>(skins.keySet());
+            Collections.sort(names);
+            return names;
+        });
+    }
+
+    /**
+     * Imports the Skins/*.skin and Players/*.player files of the flat-file
+     * backend. Runs once, a marker file keeps it from running again.
+     */
+    public void migrate(File pluginFolder) {
+        File marker = new File(folder, "migrated");
+
+        if (marker.exists())
+            return;
+
+        FileStorageBackend files = new FileStorageBackend(pluginFolder, exe);
+        int skinCount = 0, playerCount = 0;
+
+        try {
+            for (String name : files.listSkins()) {
+                if (skins.containsKey(name))
+                    continue;
+                try {
+                    SkinRecord record = files.readSkin(name);
+                    if (record != null) {
+                        append(new Record(SKIN, name, record, null), null);
+                        skinCount++;
+                    }
+                } catch (IOException e) {
+                    System.out.println("[SkinsRestorer] Skipping unreadable skin " + name + " while migrating.");
+                }
+            }
+
+            for (String name : files.listPlayers()) {
+                if (players.containsKey(name))
+                    continue;
+                try {
+                    String skin = files.readPlayerSkin(name);
+                    if (skin != null && !skin.isEmpty()) {
+                        append(new Record(PLAYER, name, null, skin), null);
+                        playerCount++;
+                    }
+                } catch (IOException e) {
+                    System.out.println("[SkinsRestorer] Skipping unreadable player " + name + " while migrating.");
+                }
+            }
+
+            synchronized (this) {
+                active.channel.force(false);
+            }
+            marker.createNewFile();
+        } catch (IOException e) {
+            System.out.println("[SkinsRestorer] Could not migrate the Skins and Players folders: " + e.getMessage());
+            return;
+        }
+
+        if (skinCount > 0 || playerCount > 0)
+            System.out.println("[SkinsRestorer] Migrated " + skinCount + " skins and " + playerCount
+                    + " players to the Data folder. The old Skins and Players folders can be removed.");
+    }
+
+    @Override
+    public void close() {
+        // interrupting the compactor would close the channel it is reading or writing
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments.values())
+                try {
+                    if (segment == active)
+                        segment.channel.force(true);
+                    segment.channel.close();
+                } catch (IOException e) {
+                    System.out.println("[SkinsRestorer] Could not close " + segment.file.getName() + ": " + e.getMessage());
+                }
+        }
+    }
+
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private static class Segment {
+
+        private final int id;
+        private final File file;
+        private final FileChannel channel;
+        private final AtomicLong live = new AtomicLong();
+        private volatile long size;
+
+        private Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+    }
+
+    private static class Location {
+
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        // oldest segment that may hold a record of the same key
+        private int first;
+
+        private Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class Record {
+
+        private final byte type;
+        private final String key;
+        private final SkinRecord skin;
+        private final String player;
+
+        private Record(byte type, String key, SkinRecord skin, String player) {
+            this.type = type;
+            this.key = key;
+            this.skin = skin;
+            this.player = player;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package skinsrestorer.shared.storage;
+
+import skinsrestorer.shared.utils.MySQL;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * MySQL backend using the Skins and Players tables from the config.
+ */
+public class MySQLStorageBackend implements SkinStorageBackend {
+
+    // names looked up per "in (...)" query, keeps the statements a sane size
+    private static final int CHUNK_SIZE = 100;
+
+    private static volatile Statements sql = new Statements();
+
+    private final MySQL mysql;
+    private final Executor exe;
+
+    public MySQLStorageBackend(MySQL mysql, Executor exe) {
+        this.mysql = mysql;
+        this.exe = exe;
+    }
+
+    @Override
+    public CompletableFuture<SkinRecord> getSkin(final String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return queryFirst(sql.selectSkin, MySQLStorageBackend::readSkin, name);
+            } catch (NumberFormatException e) {
+                throw new StorageException(e, true);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SkinRecord>> getSkins(final Collection<String> names) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, SkinRecord> records = new HashMap<>();
+
+            for (Object[] chunk : chunks(names))
+                for (Map.Entry<String, SkinRecord> e : query(sql.selectSkins, rs -> {
+                    try {
+                        return new AbstractMap.SimpleImmutableEntry<>(rs.getString("Nick").toLowerCase(), readSkin(rs));
+                    } catch (NumberFormatException ex) {
+                        // unreadable rows are left out, like missing ones
+                        return null;
+                    }
+                }, chunk))
+                    records.put(e.getKey(), e.getValue());
+
+            return records;
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> setSkin(final String name, final SkinRecord record) {
+        return CompletableFuture.runAsync(() -> update(sql.upsertSkin, name, record.getValue(), record.getSignature(),
+                String.valueOf(record.getTimestamp())), exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> setSkins(final Map<String, SkinRecord> records) {
+        return CompletableFuture.runAsync(() -> {
+            List<Object[]> rows = new ArrayList<>(records.size());
+            for (Map.Entry<String, SkinRecord> e : records.entrySet())
+                rows.add(new Object[]{e.getKey(), e.getValue().getValue(), e.getValue().getSignature(),
+                        String.valueOf(e.getValue().getTimestamp())});
+
+            try {
+                mysql.batch(sql.upsertSkin, rows);
+            } catch (SQLException e) {
+                throw new StorageException(e);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeSkin(final String name) {
+        return CompletableFuture.runAsync(() -> update(sql.deleteSkin, name), exe);
+    }
+
+    @Override
+    public CompletableFuture<String> getPlayerSkin(final String name) {
+        return CompletableFuture.supplyAsync(() -> queryFirst(sql.selectPlayer, rs -> rs.getString("Skin"),
+                name), exe);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPlayerSkins(final Collection<String> names) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, String> skins = new HashMap<>();
+
+            for (Object[] chunk : chunks(names))
+                for (Map.Entry<String, String> e : query(sql.selectPlayers, rs -> rs.getString("Skin") == null ? null
+                        : new AbstractMap.SimpleImmutableEntry<>(rs.getString("Nick").toLowerCase(), rs.getString("Skin")),
+                        chunk))
+                    skins.put(e.getKey(), e.getValue());
+
+            return skins;
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerSkin(final String name, final String skin) {
+        return CompletableFuture.runAsync(() -> update(sql.upsertPlayer, name, skin), exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerSkins(final Map<String, String> skins) {
+        return CompletableFuture.runAsync(() -> {
+            List<Object[]> rows = new ArrayList<>(skins.size());
+            for (Map.Entry<String, String> e : skins.entrySet())
+                rows.add(new Object[]{e.getKey(), e.getValue()});
+
+            try {
+                mysql.batch(sql.upsertPlayer, rows);
+            } catch (SQLException e) {
+                throw new StorageException(e);
+            }
+        }, exe);
+    }
+
+    @Override
+    public CompletableFuture<Void> removePlayerSkin(final String name) {
+        return CompletableFuture.runAsync(() -> update(sql.deletePlayer, name), exe);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getSkinNames() {
+        return CompletableFuture.supplyAsync(() -> query(sql.listSkins, rs -> rs.getString("Nick")), exe);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getSkinNames(final int offset, final int limit) {
+        return CompletableFuture.supplyAsync(() -> query(sql.listSkinsPage, rs -> rs.getString("Nick"), offset, limit), exe);
+    }
+
+    private static SkinRecord readSkin(ResultSet rs) throws SQLException {
+        return new SkinRecord(rs.getString("Value"), rs.getString("Signature"), Long.parseLong(rs.getString("timestamp")));
+    }
+
+    /**
+     * Builds the SQL of every statement from the table names in the config,
+     * called whenever the config gets loaded
+     */
+    static void prepareStatements() {
+        sql = new Statements();
+    }
+
+    /**
+     * Splits the names into chunks of CHUNK_SIZE, the last one padded by
+     * repeating a name so every chunk runs the same prepared statement
+     */
+    private static List<Object[]> chunks(Collection<String> names) {
+        List<String> all = new ArrayList<>(names);
+        List<Object[]> chunks = new ArrayList<>();
+
+        for (int i = 0; i < all.size(); i += CHUNK_SIZE) {
+            Object[] chunk = new Object[CHUNK_SIZE];
+            for (int j = 0; j < CHUNK_SIZE; j++)
+                chunk[j] = all.get(Math.min(i + j, all.size() - 1));
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    private <T> List<T> query(String query, MySQL.RowMapper<T> mapper, Object... vars) {
+        try {
+            return mysql.query(query, mapper, vars);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private <T> T queryFirst(String query, MySQL.RowMapper<T> mapper, Object... vars) {
+        try {
+            return mysql.queryFirst(query, mapper, vars);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private void update(String query, Object... vars) {
+        try {
+            mysql.update(query, vars);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    public MySQL getMySQL() {
+        return mysql;
+    }
+
+    @Override
+    public void close() {
+        mysql.closeConnection();
+    }
+
+    /**
+     * SQL of the statements the backend runs, the same text every time so
+     * the prepared statements can be reused
+     */
+    private static class Statements {
+
+        private final String selectSkin = "select Value, Signature, timestamp from " + Config.MYSQL_SKINTABLE + " where Nick=?";
+        private final String selectSkins = "select Nick, Value, Signature, timestamp from " + Config.MYSQL_SKINTABLE
+                + " where Nick in (" + placeholders(CHUNK_SIZE) + ")";
+        // one round trip per write, no window between checking for the row and writing it
+        private final String upsertSkin = "insert into " + Config.MYSQL_SKINTABLE + " (Nick, Value, Signature, timestamp)"
+                + " values (?,?,?,?) on duplicate key update Value=values(Value), Signature=values(Signature),"
+                + " timestamp=values(timestamp)";
+        private final String deleteSkin = "delete from " + Config.MYSQL_SKINTABLE + " where Nick=?";
+        private final String listSkins = "select Nick from " + Config.MYSQL_SKINTABLE + " order by Nick";
+        private final String listSkinsPage = "select Nick from " + Config.MYSQL_SKINTABLE + " order by Nick limit ?,?";
+        private final String selectPlayer = "select Skin from " + Config.MYSQL_PLAYERTABLE + " where Nick=?";
+        private final String selectPlayers = "select Nick, Skin from " + Config.MYSQL_PLAYERTABLE
+                + " where Nick in (" + placeholders(CHUNK_SIZE) + ")";
+        private final String upsertPlayer = "insert into " + Config.MYSQL_PLAYERTABLE + " (Nick, Skin) values (?,?)"
+                + " on duplicate key update Skin=values(Skin)";
+        private final String deletePlayer = "delete from " + Config.MYSQL_PLAYERTABLE + " where Nick=?";
+
+        private static String placeholders(int count) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < count; i++)
+                sb.append(i == 0 ? "?" : ",?");
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package skinsrestorer.shared.storage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes stored skins before anyone has to read them expired.
+ * <p>
+ * Skins are kept ordered by the time they expire. At most one refresh (two
+ * Mojang requests) is started per tick, so the requests per minute stay
+ * within the configured budget. Expired skins worn by online players go
+ * first, skins nobody used for the configured number of days are dropped
+ * from the schedule until they get used again.
+ */
+public class RefreshScheduler {
+
+    private static final long RETRY_AFTER = TimeUnit.MINUTES.toMillis(5);
+    private static final int LOAD_CHUNK_SIZE = 1000;
+
+    private final SkinRefresher refresher;
+    private final long unusedAfter;
+    private final ScheduledExecutorService timer;
+    private final TreeSet<Item> queue = new TreeSet<>();
+    private final Map<String, Item> items = new HashMap<>();
+
+    /**
+     * @param refresher         - Refresher doing the actual Mojang requests
+     * @param requestsPerMinute - Mojang request budget of the scheduler
+     * @param unusedDays        - Days after which unused skins aren't refreshed anymore
+     */
+    public RefreshScheduler(SkinRefresher refresher, int requestsPerMinute, int unusedDays) {
+        this.refresher = refresher;
+        this.unusedAfter = TimeUnit.DAYS.toMillis(unusedDays);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SkinsRestorer Refresh Scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long tick = TimeUnit.MINUTES.toMillis(2) / Math.max(requestsPerMinute, 1);
+        timer.scheduleWithFixedDelay(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules every skin stored in the backend, runs in the background
+     * reading the skins in bulk
+     */
+    public void load(final SkinStorageBackend backend) {
+        timer.execute(() -> {
+            try {
+                List<String> names = backend.getSkinNames().join();
+                for (int i = 0; i < names.size(); i += LOAD_CHUNK_SIZE)
+                    for (Map.Entry<String, SkinRecord> e : backend.getSkins(
+                            names.subList(i, Math.min(i + LOAD_CHUNK_SIZE, names.size()))).join().entrySet())
+                        loaded(e.getKey(), e.getValue().getTimestamp());
+            } catch (Exception e) {
+                System.out.println("[SkinsRestorer] Could not load the skins to refresh: " + e.getMessage());
+            }
+        });
+    }
+
+    private synchronized void loaded(String name, long timestamp) {
+        // skins used or saved meanwhile are scheduled already
+        if (!items.containsKey(name))
+            schedule(name, timestamp, timestamp);
+    }
+
+    /**
+     * Updates the expiry of a skin that just got saved
+     */
+    public synchronized void saved(String name, long timestamp) {
+        Item item = items.get(name);
+        schedule(name, timestamp, item == null ? timestamp : item.lastUsed);
+    }
+
+    /**
+     * Marks a skin as used, scheduling it again if it got dropped
+     */
+    public synchronized void used(String name, long timestamp) {
+        Item item = items.get(name);
+
+        if (item == null)
+            schedule(name, timestamp, System.currentTimeMillis());
+        else
+            item.lastUsed = System.currentTimeMillis();
+    }
+
+    public synchronized void removed(String name) {
+        Item item = items.remove(name);
+
+        if (item != null)
+            queue.remove(item);
+    }
+
+    private synchronized void schedule(String name, long timestamp, long lastUsed) {
+        removed(name);
+
+        Item item = new Item(name, timestamp + TimeUnit.MINUTES.toMillis(Config.SKIN_EXPIRES_AFTER), lastUsed);
+        items.put(name, item);
+        queue.add(item);
+    }
+
+    private void tick() {
+        final Item item;
+        try {
+            item = next();
+        } catch (Exception e) {
+            // an exception would cancel the timer
+            return;
+        }
+
+        if (item == null)
+            return;
+
+        refresher.refresh(item.name, SkinStorage.getSkinRecord(item.name, false)).thenAccept(refreshed -> {
+            // a successful refresh reschedules through saved()
+            if (!refreshed)
+                synchronized (RefreshScheduler.this) {
+                    if (items.get(item.name) == item) {
+                        queue.remove(item);
+                        item.expiresAt = System.currentTimeMillis() + RETRY_AFTER;
+                        queue.add(item);
+                    }
+                }
+        });
+    }
+
+    /**
+     * Picks the next expired skin to refresh, worn ones first
+     */
+    private Item next() {
+        Set<String> worn = refresher.getWornSkins();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Item best = null;
+            for (String name : worn) {
+                Item item = items.get(name);
+                if (item != null && item.expiresAt <= now && (best == null || item.compareTo(best) < 0))
+                    best = item;
+            }
+
+            while (best == null && !queue.isEmpty() && queue.first().expiresAt <= now) {
+                Item item = queue.first();
+
+                if (item.lastUsed + unusedAfter < now)
+                    removed(item.name);
+                else
+                    best = item;
+            }
+
+            if (best != null) {
+                // parked until the refresh saves it again (or fails)
+                queue.remove(best);
+                best.expiresAt = now + RETRY_AFTER;
+                queue.add(best);
+            }
+
+            return best;
+        }
+    }
+
+    /**
+     * @return Number of skins scheduled for a refresh
+     */
+    public synchronized int getScheduled() {
+        return items.size();
+    }
+
+    /**
+     * @return Number of scheduled skins that are expired already
+     */
+    public synchronized int getDue() {
+        long now = System.currentTimeMillis();
+        int due = 0;
+        for (Item item : queue) {
+            if (item.expiresAt > now)
+                break;
+            due++;
+        }
+        return due;
+    }
+
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private static class Item implements Comparable<Item> {
+
+        private final String name;
+        private long expiresAt;
+        private long lastUsed;
+
+        private Item(String name, long expiresAt, long lastUsed) {
+            this.name = name;
+            this.expiresAt = expiresAt;
+            this.lastUsed = lastUsed;
+        }
+
+        @Override
+        public int compareTo(Item o) {
+            int c = Long.compare(expiresAt, o.expiresAt);
+            return c != 0 ? c : name.compareTo(o.name);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package skinsrestorer.shared.storage;
+
+import skinsrestorer.shared.utils.MojangAPI;
+
+/**
+ * Decoded skin data as it is stored in the database (value, signature and
+ * the time it was fetched from Mojang).
+ */
+public class SkinRecord {
+
+    private final String value;
+    private final String signature;
+    private final long timestamp;
+
+    public SkinRecord(String value, String signature, long timestamp) {
+        this.value = value;
+        this.signature = signature;
+        this.timestamp = timestamp;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isOld() {
+        return SkinStorage.isOld(timestamp);
+    }
+
+    /**
+     * @return Texture url from the decoded value, tells apart two skins
+     * regardless of when they were fetched
+     */
+    public String getTextureUrl() {
+        String url = MojangAPI.getTextureUrl(value);
+        return url == null ? value : url;
+    }
+
+    /**
+     * @return Property object (either oldMojang, newMojang or Bungee one)
+     */
+    public Object toProperty() {
+        return SkinStorage.createProperty("textures", value, signature);
+    }
+}
@@ -0,0 +1,175 @@
+package skinsrestorer.shared.storage;
+
+import skinsrestorer.shared.sources.SkinSources;
+import skinsrestorer.shared.utils.ExpiringCache;
+import skinsrestorer.shared.utils.ReflectionUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes expired skins from the skin sources in the background.
+ * <p>
+ * Reads keep serving the stored data while a refresh runs, and only one
+ * refresh per skin runs at a time. Online players wearing the skin get it
+ * re-applied when the texture actually changed.
+ * <p>
+ * The skins online players wear are tracked from joins, quits and skin
+ * changes, so finding the wearers of a skin costs no storage lookups.
+ */
+public class SkinRefresher {
+
+    private static final long RETRY_AFTER = TimeUnit.MINUTES.toMillis(1);
+
+    private final Executor exe;
+    private final boolean isBungee;
+    private final Map<String, CompletableFuture<Boolean>> running = new ConcurrentHashMap<>();
+    private final ExpiringCache<String, Boolean> failed = new ExpiringCache<>(1000);
+    // online player -> skin they wear, both lowercase
+    private final Map<String, String> wearers = new ConcurrentHashMap<>();
+
+    public SkinRefresher(Executor exe, boolean isBungee) {
+        this.exe = exe;
+        this.isBungee = isBungee;
+    }
+
+    /**
+     * Schedules a refresh of the skin, unless one is running already or the
+     * last attempt failed less than a minute ago.
+     *
+     * @param name - Skin name (lowercase)
+     * @param old  - Currently stored skin data, null if there is none
+     * @return Completes with true when new skin data got saved
+     */
+    public CompletableFuture<Boolean> refresh(final String name, final SkinRecord old) {
+        if (failed.getEntry(name) != null)
+            return CompletableFuture.completedFuture(false);
+
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = running.putIfAbsent(name, future);
+
+        if (existing != null)
+            return existing;
+
+        exe.execute(() -> {
+            boolean refreshed = false;
+            try {
+                refreshed = fetch(name, old);
+            } catch (Exception e) {
+            } finally {
+                if (!refreshed)
+                    failed.put(name, true, RETRY_AFTER);
+                running.remove(name, future);
+                future.complete(refreshed);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * @return Number of refreshes currently running
+     */
+    public int getRunning() {
+        return running.size();
+    }
+
+    private boolean fetch(String name, SkinRecord old) throws Exception {
+        Object props = SkinSources.fetchSkin(name, true);
+        String value = (String) ReflectionUtil.invokeMethod(props, "getValue");
+        String signature = (String) ReflectionUtil.invokeMethod(props, "getSignature");
+
+        if (value == null || value.isEmpty() || signature == null || signature.isEmpty())
+            return false;
+
+        SkinStorage.setSkinData(name, props);
+
+        if (old == null || !new SkinRecord(value, signature, 0).getTextureUrl().equals(old.getTextureUrl()))
+            applyToWearers(name, props);
+
+        return true;
+    }
+
+    private void applyToWearers(String skin, final Object props) {
+        final List<String> players = new ArrayList<>();
+        for (Map.Entry<String, String> e : wearers.entrySet())
+            if (e.getValue().equals(skin))
+                players.add(e.getKey());
+
+        if (players.isEmpty())
+            return;
+
+        if (isBungee) {
+            for (String player : players) {
+                net.md_5.bungee.api.connection.ProxiedPlayer p = net.md_5.bungee.api.ProxyServer.getInstance().getPlayer(player);
+                if (p != null)
+                    skinsrestorer.bungee.SkinApplier.applySkin(p);
+            }
+            return;
+        }
+
+        // Bukkit players may only be touched on the main thread
+        org.bukkit.Bukkit.getScheduler().runTask(skinsrestorer.bukkit.SkinsRestorer.getInstance(), () -> {
+            for (String player : players) {
+                org.bukkit.entity.Player p = org.bukkit.Bukkit.getPlayerExact(player);
+                if (p != null && p.isOnline())
+                    skinsrestorer.bukkit.SkinsRestorer.getInstance().getFactory().applySkin(p, props);
+            }
+        });
+    }
+
+    /**
+     * Starts tracking the skin of a player that joined, reads storage so
+     * don't call it on the main thread
+     */
+    public void joined(String player) {
+        wearers.put(player.toLowerCase(), wornBy(player));
+    }
+
+    /**
+     * Starts tracking the skins of players that are online already (plugin
+     * reload), with one storage lookup for all of them
+     */
+    public void joined(Collection<String> players) {
+        Map<String, String> skins = SkinStorage.getPlayerSkins(players);
+
+        for (String player : players) {
+            String skin = skins.get(player.toLowerCase());
+            wearers.put(player.toLowerCase(), (skin == null ? player : skin).toLowerCase());
+        }
+    }
+
+    public void quit(String player) {
+        wearers.remove(player.toLowerCase());
+    }
+
+    /**
+     * Updates the skin an online player wears
+     *
+     * @param player - Players name (lowercase)
+     * @param skin   - Skin name, null for their own
+     */
+    void changed(String player, String skin) {
+        wearers.replace(player, (skin == null ? player : skin).toLowerCase());
+    }
+
+    /**
+     * @return Names of the skins online players are wearing (lowercase)
+     */
+    public Set<String> getWornSkins() {
+        return new HashSet<>(wearers.values());
+    }
+
+    private static String wornBy(String player) {
+        String chosen = SkinStorage.getPlayerSkin(player);
+        return (chosen == null ? player : chosen).toLowerCase();
+    }
+}
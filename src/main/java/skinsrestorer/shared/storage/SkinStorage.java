@@ -1,21 +1,29 @@
 package skinsrestorer.shared.storage;
 
-import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
-import skinsrestorer.bukkit.SkinsRestorer;
+import skinsrestorer.shared.sources.SkinSources;
+import skinsrestorer.shared.utils.CircuitBreaker;
+import skinsrestorer.shared.utils.ConnectionPool;
+import skinsrestorer.shared.utils.ExpiringCache;
 import skinsrestorer.shared.utils.MojangAPI;
 import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
 import skinsrestorer.shared.utils.MySQL;
 import skinsrestorer.shared.utils.ReflectionUtil;
+import skinsrestorer.shared.utils.TokenBucket;
 
-import javax.sql.rowset.CachedRowSet;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -23,10 +31,14 @@ import java.util.concurrent.TimeUnit;
 public class SkinStorage {
 
     private static Class<?> property;
-    private static MySQL mysql;
-    private static File folder;
+    private static SkinStorageBackend backend;
+    private static WriteBehindQueue writeQueue;
     private static ExecutorService exe;
     private static boolean isBungee;
+    private static SkinRefresher refresher;
+    private static RefreshScheduler scheduler;
+    private static final ExpiringCache<String, SkinRecord> skinCache = new ExpiringCache<>(Config.SKIN_CACHE_SIZE);
+    private static final ExpiringCache<String, String> playerCache = new ExpiringCache<>(Config.PLAYER_CACHE_SIZE);
 
     static {
         try {
@@ -47,6 +59,7 @@ public class SkinStorage {
                 }
             }
         }
+        refresher = new SkinRefresher(exe, isBungee);
     }
 
     /**
@@ -80,7 +93,7 @@ public class SkinStorage {
      * either null (if no skin data found) or the property object conatining all
      * the skin data.
      * <p>
-     * Also, it schedules a skin update to stay up to date with skin changes.
+     * Skins that aren't stored yet are looked up in the skin sources.
      *
      * @return Property object
      **/
@@ -89,184 +102,281 @@ public class SkinStorage {
 
         if (skin == null)
             skin = name.toLowerCase();
-        Object textures = null;
-        if (Config.DEFAULT_SKINS_ENABLED) {
-            textures = getSkinData(Config.DEFAULT_SKINS.get(new Random().nextInt(Config.DEFAULT_SKINS.size())));
-        }
-        textures = getSkinData(skin);
-        if (textures != null) {
-            return textures;
-        }
-        // Schedule skin update for next login
-        final String sname = skin;
-        final Object oldprops = textures;
+        return SkinSources.getSkin(skin);
+    }
 
-        try {
-            Object props = null;
+    /*
+     * Returns the custom skin name that player has set.
+     *
+     * Returns null if player has no custom skin set. (even if its his own name)
+     */
+    public static String getPlayerSkin(String name) {
+        name = name.toLowerCase();
+        ExpiringCache.Entry<String> cached = playerCache.getEntry(name);
 
-            props = MojangAPI.getSkinProperty(MojangAPI.getUUID(sname));
+        if (cached != null)
+            return cached.getValue();
 
-            if (props == null)
-                return props;
+        String skin = null;
+        WriteBehindQueue.Write pending = writeQueue == null ? null : writeQueue.getPendingPlayer(name);
+        try {
+            skin = pending != null ? pending.getPlayerSkin() : await(backend.getPlayerSkin(name));
+        } catch (StorageException e) {
+            System.out.println("[SkinsRestorer] Could not read skin of player " + name + ": " + e.getMessage());
+            return null;
+        }
 
-            boolean shouldUpdate = false;
+        if (skin != null && (skin.isEmpty() || skin.equalsIgnoreCase(name))) {
+            removePlayerSkin(name);
+            skin = null;
+        }
 
-            String value = Base64Coder.decodeString((String) ReflectionUtil.invokeMethod(props, "getValue"));
+        // null ("no custom skin") is cached as well, unless the skin was changed while reading it
+        playerCache.putIfAbsent(name, skin, TimeUnit.MINUTES.toMillis(Config.PLAYER_CACHE_EXPIRES_AFTER));
+        return skin;
+    }
 
-            String urlbeg = "url\":\"";
-            String urlend = "\"}}";
+    /**
+     * Returns the custom skin names of several players, reading all the ones
+     * that aren't cached in one go.
+     *
+     * @param names - Players names
+     * @return Players name (lowercase) -> skin name, players without a custom skin are left out
+     */
+    public static Map<String, String> getPlayerSkins(Collection<String> names) {
+        Map<String, String> skins = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+
+        for (String name : names) {
+            name = name.toLowerCase();
+            ExpiringCache.Entry<String> cached = playerCache.getEntry(name);
+            WriteBehindQueue.Write pending;
+
+            if (cached != null) {
+                if (cached.getValue() != null)
+                    skins.put(name, cached.getValue());
+            } else if (writeQueue != null && (pending = writeQueue.getPendingPlayer(name)) != null) {
+                if (pending.getPlayerSkin() != null)
+                    skins.put(name, pending.getPlayerSkin());
+            } else {
+                missing.add(name);
+            }
+        }
 
-            String newurl = MojangAPI.getStringBetween(value, urlbeg, urlend);
+        if (missing.isEmpty())
+            return skins;
 
-            try {
-                value = Base64Coder.decodeString((String) ReflectionUtil.invokeMethod(oldprops, "getValue"));
+        Map<String, String> found;
+        try {
+            found = await(backend.getPlayerSkins(missing));
+        } catch (StorageException e) {
+            System.out.println("[SkinsRestorer] Could not read skins of players: " + e.getMessage());
+            return skins;
+        }
 
-                String oldurl = MojangAPI.getStringBetween(value, urlbeg, urlend);
+        for (String name : missing) {
+            String skin = found.get(name);
 
-                shouldUpdate = !oldurl.equals(newurl);
-            } catch (Exception e) {
-                shouldUpdate = true;
+            if (skin != null && (skin.isEmpty() || skin.equalsIgnoreCase(name))) {
+                removePlayerSkin(name);
+                skin = null;
             }
 
-            setSkinData(sname, props);
-
-            if (shouldUpdate)
-                if (isBungee)
-                    skinsrestorer.bungee.SkinApplier.applySkin(name);
-                else {
-                    SkinsRestorer.getInstance().getFactory().applySkin(org.bukkit.Bukkit.getPlayer(name),
-                            props);
-                }
-        } catch (Exception e) {
-            throw new SkinRequestException(Locale.WAIT_A_MINUTE);
+            playerCache.putIfAbsent(name, skin, TimeUnit.MINUTES.toMillis(Config.PLAYER_CACHE_EXPIRES_AFTER));
+            if (skin != null)
+                skins.put(name, skin);
         }
 
-        return textures;
+        return skins;
     }
 
-    /*
-     * Returns the custom skin name that player has set.
-     *
-     * Returns null if player has no custom skin set. (even if its his own name)
-     */
-    public static String getPlayerSkin(String name) {
+    /**
+     * Returns property object containing skin data of the wanted skin
+     * <p>
+     * Expired skins are returned as they are, a refresh gets scheduled in
+     * the background.
+     **/
+    public static Object getSkinData(String name) {
         name = name.toLowerCase();
-        if (Config.USE_MYSQL) {
+        SkinRecord record = getSkinRecord(name, true);
 
-            CachedRowSet crs = mysql.query("select * from " + Config.MYSQL_PLAYERTABLE + " where Nick=?", name);
-
-            if (crs != null)
-                try {
-                    String skin = crs.getString("Skin");
-
-                    if (skin.isEmpty() || skin.equalsIgnoreCase(name)) {
-                        removePlayerSkin(name);
-                        skin = name;
-                    }
+        if (record == null)
+            return null;
 
-                    return skin;
+        if (scheduler != null)
+            scheduler.used(name, record.getTimestamp());
 
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        if (record.isOld())
+            refresher.refresh(name, record);
 
-            return name;
+        return record.toProperty();
+    }
 
-        } else {
-            File playerFile = new File(
-                    folder.getAbsolutePath() + File.separator + "Players" + File.separator + name + ".player");
+    /**
+     * Returns property objects of several skins, reading all the ones that
+     * aren't cached in one go. Like {@link #getSkinData(String)} expired
+     * skins get a refresh scheduled.
+     *
+     * @param names - Skin names
+     * @return Skin name (lowercase) -> property object, unknown skins are left out
+     */
+    public static Map<String, Object> getSkinData(Collection<String> names) {
+        Map<String, Object> properties = new HashMap<>();
 
-            try {
-                if (!playerFile.exists())
-                    return null;
+        for (Map.Entry<String, SkinRecord> e : getSkinRecords(names).entrySet()) {
+            if (scheduler != null)
+                scheduler.used(e.getKey(), e.getValue().getTimestamp());
 
-                BufferedReader buf = new BufferedReader(new FileReader(playerFile));
+            if (e.getValue().isOld())
+                refresher.refresh(e.getKey(), e.getValue());
 
-                String line, skin = null;
-                if ((line = buf.readLine()) != null)
-                    skin = line;
+            properties.put(e.getKey(), e.getValue().toProperty());
+        }
 
-                buf.close();
+        return properties;
+    }
 
-                if (skin.equalsIgnoreCase(name))
-                    playerFile.delete();
+    /**
+     * Returns the stored skin records, the ones that aren't cached are read
+     * from the database with a single lookup
+     *
+     * @param names - Skin names
+     * @return Skin name (lowercase) -> record, unknown skins are left out
+     */
+    static Map<String, SkinRecord> getSkinRecords(Collection<String> names) {
+        Map<String, SkinRecord> records = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+
+        for (String name : names) {
+            name = name.toLowerCase();
+            SkinRecord record = skinCache.get(name);
+            WriteBehindQueue.Write pending;
+
+            if (record != null) {
+                records.put(name, record);
+            } else if (writeQueue != null && (pending = writeQueue.getPendingSkin(name)) != null) {
+                if (pending.getRecord() != null)
+                    records.put(name, pending.getRecord());
+            } else {
+                missing.add(name);
+            }
+        }
 
-                return skin;
+        if (missing.isEmpty())
+            return records;
 
-            } catch (Exception e) {
+        try {
+            for (Map.Entry<String, SkinRecord> e : await(backend.getSkins(missing)).entrySet()) {
+                skinCache.putIfAbsent(e.getKey(), e.getValue(), TimeUnit.MINUTES.toMillis(Config.SKIN_EXPIRES_AFTER));
+                records.put(e.getKey(), e.getValue());
             }
-
-            return name;
+        } catch (StorageException e) {
+            System.out.println("[SkinsRestorer] Could not read skins: " + e.getMessage());
         }
+
+        return records;
     }
 
     /**
-     * Returns property object containing skin data of the wanted skin
+     * Returns the stored skin record, going to the database only when it is
+     * not cached yet.
+     *
+     * @param name         - Skin name (lowercase)
+     * @param removeBroken - Whether unreadable skin data should be removed
      **/
-    public static Object getSkinData(String name) {
-        name = name.toLowerCase();
-        if (Config.USE_MYSQL) {
+    static SkinRecord getSkinRecord(String name, boolean removeBroken) {
+        SkinRecord record = skinCache.get(name);
 
-            CachedRowSet crs = mysql.query("select * from " + Config.MYSQL_SKINTABLE + " where Nick=?", name);
-            if (crs != null)
-                try {
-                    String value = crs.getString("Value");
-                    String signature = crs.getString("Signature");
-                    String timestamp = crs.getString("timestamp");
-
-                    if (isOld(Long.valueOf(timestamp))) {
-                        //removeSkinData(name); Remove that cause its useless
-                        Object skin = MojangAPI.getSkinProperty(MojangAPI.getUUID(name));
-                        if (skin != null) {
-                            SkinStorage.setSkinData(name, skin);
-                        }
-                    }
-                    return createProperty("textures", value, signature);
-
-                } catch (Exception e) {
-                    removeSkinData(name);
-                    System.out.println("[SkinsRestorer] Unsupported player format.. removing (" + name + ").");
-                }
+        if (record != null)
+            return record;
 
+        WriteBehindQueue.Write pending = writeQueue == null ? null : writeQueue.getPendingSkin(name);
+        try {
+            record = pending != null ? pending.getRecord() : await(backend.getSkin(name));
+        } catch (StorageException e) {
+            // the database being down doesn't make the skin broken
+            if (!e.isUnreadable()) {
+                System.out.println("[SkinsRestorer] Could not read skin " + name + ": " + e.getMessage());
+                return null;
+            }
+            if (removeBroken)
+                removeSkinData(name);
+            System.out.println("[SkinsRestorer] Unsupported player format.. removing (" + name + ").");
             return null;
+        }
 
-        } else {
-            File skinFile = new File(
-                    folder.getAbsolutePath() + File.separator + "Skins" + File.separator + name + ".skin");
+        if (record != null)
+            skinCache.putIfAbsent(name, record, TimeUnit.MINUTES.toMillis(Config.SKIN_EXPIRES_AFTER));
 
-            try {
-                if (!skinFile.exists())
-                    return null;
-
-                BufferedReader buf = new BufferedReader(new FileReader(skinFile));
-
-                String line, value = "", signature = "", timestamp = "";
-                for (int i = 0; i < 3; i++)
-                    if ((line = buf.readLine()) != null)
-                        if (value.isEmpty()) {
-                            value = line;
-                        } else if (signature.isEmpty()) {
-                            signature = line;
-                        } else {
-                            timestamp = line;
-                        }
-                buf.close();
-                if (isOld(Long.valueOf(timestamp))) {
-                    //removeSkinData(name);
-                    Object skin = MojangAPI.getSkinProperty(MojangAPI.getUUID(name));
-                    if (skin != null) {
-                        SkinStorage.setSkinData(name, skin);
-                    }
-                }
-                return SkinStorage.createProperty("textures", value, signature);
+        return record;
+    }
 
-            } catch (Exception e) {
-                removeSkinData(name);
-                System.out.println("[SkinsRestorer] Unsupported player format.. removing (" + name + ").");
-            }
+    public static SkinRefresher getRefresher() {
+        return refresher;
+    }
 
-            return null;
+    /**
+     * @return Cache holding the skins that were read or written lately
+     */
+    public static ExpiringCache<String, SkinRecord> getSkinCache() {
+        return skinCache;
+    }
+
+    /**
+     * @return Cache holding the skin names players have set (or that they have none)
+     */
+    public static ExpiringCache<String, String> getPlayerCache() {
+        return playerCache;
+    }
+
+    /**
+     * @return Human readable state of the caches, queues and rate limits
+     */
+    public static List<String> getStatus() {
+        List<String> status = new ArrayList<>();
+        status.add(formatCacheStatus("Skin", skinCache));
+        status.add(formatCacheStatus("Player", playerCache));
+        status.add(formatCacheStatus("UUID", MojangAPI.getUUIDCache()));
+        if (writeQueue != null)
+            status.add(Locale.STATUS_WRITE_QUEUE.replace("%depth%", String.valueOf(writeQueue.getDepth()))
+                    .replace("%written%", String.valueOf(writeQueue.getWritten()))
+                    .replace("%coalesced%", String.valueOf(writeQueue.getCoalesced())));
+        ConnectionPool pool = backend instanceof MySQLStorageBackend ? ((MySQLStorageBackend) backend).getMySQL().getPool() : null;
+        if (pool != null)
+            status.add(Locale.STATUS_MYSQL_POOL.replace("%active%", String.valueOf(pool.getActive()))
+                    .replace("%idle%", String.valueOf(pool.getIdle()))
+                    .replace("%max%", String.valueOf(pool.getMaxSize()))
+                    .replace("%wait%", String.format("%.1f", pool.getAverageWait()))
+                    .replace("%timeouts%", String.valueOf(pool.getTimeouts()))
+                    .replace("%leaks%", String.valueOf(pool.getLeaks())));
+        if (pool != null && Config.MYSQL_POOL_STATEMENT_CACHE > 0) {
+            long hits = pool.getStatementHits(), misses = pool.getStatementMisses();
+            status.add(Locale.STATUS_MYSQL_STATEMENTS.replace("%hits%", String.valueOf(hits))
+                    .replace("%misses%", String.valueOf(misses))
+                    .replace("%hitrate%", String.format("%.1f", hits + misses == 0 ? 0 : hits * 100.0 / (hits + misses))));
         }
+        if (scheduler != null)
+            status.add(Locale.STATUS_REFRESH_QUEUE.replace("%scheduled%", String.valueOf(scheduler.getScheduled()))
+                    .replace("%due%", String.valueOf(scheduler.getDue()))
+                    .replace("%running%", String.valueOf(refresher.getRunning())));
+        status.addAll(SkinSources.getStatus());
+        for (TokenBucket bucket : MojangAPI.getBuckets())
+            status.add(Locale.STATUS_RATE_LIMIT.replace("%endpoint%", bucket.getName())
+                    .replace("%tokens%", String.valueOf((int) bucket.getTokens()))
+                    .replace("%capacity%", String.valueOf((int) bucket.getCapacity()))
+                    .replace("%waiting%", String.valueOf(bucket.getWaiting())));
+        for (Map.Entry<String, CircuitBreaker> e : MojangAPI.getCircuitBreakers().entrySet())
+            status.add(Locale.STATUS_CIRCUIT.replace("%endpoint%", e.getKey())
+                    .replace("%state%", e.getValue().getState().name().toLowerCase().replace('_', ' '))
+                    .replace("%retry%", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(e.getValue().getRemaining()))));
+        return status;
+    }
+
+    private static String formatCacheStatus(String cache, ExpiringCache<?, ?> c) {
+        return Locale.STATUS_CACHE.replace("%cache%", cache)
+                .replace("%size%", String.valueOf(c.size()))
+                .replace("%max%", String.valueOf(c.getMaxSize()))
+                .replace("%hitrate%", String.format("%.1f", c.getHitRate() * 100));
     }
 
     public static boolean isOld(long timestamp) {
@@ -277,15 +387,76 @@ public class SkinStorage {
     }
 
     public static void init(File pluginFolder) {
-        folder = pluginFolder;
-        File tempFolder = new File(folder.getAbsolutePath() + File.separator + "Skins" + File.separator);
-        tempFolder.mkdirs();
-        tempFolder = new File(folder.getAbsolutePath() + File.separator + "Players" + File.separator);
-        tempFolder.mkdirs();
+        if (Config.STORAGE_TYPE.equalsIgnoreCase("log"))
+            try {
+                LogStorageBackend log = new LogStorageBackend(pluginFolder,
+                        Config.STORAGE_SEGMENT_SIZE * 1024L * 1024L, exe);
+                log.migrate(pluginFolder);
+                init(log);
+                return;
+            } catch (IOException e) {
+                System.out.println("[SkinsRestorer] Could not open the Data folder, falling back to flat files: "
+                        + e.getMessage());
+            }
+
+        init(new FileStorageBackend(pluginFolder, exe));
     }
 
     public static void init(MySQL mysql) {
-        SkinStorage.mysql = mysql;
+        init(new MySQLStorageBackend(mysql, exe));
+    }
+
+    public static void init(SkinStorageBackend backend) {
+        skinCache.setMaxSize(Config.SKIN_CACHE_SIZE);
+        playerCache.setMaxSize(Config.PLAYER_CACHE_SIZE);
+        SkinStorage.backend = backend;
+        SkinSources.init();
+
+        if (writeQueue != null)
+            writeQueue.close();
+        writeQueue = Config.WRITE_BEHIND_ENABLED ? new WriteBehindQueue(backend, Config.WRITE_BEHIND_BATCH_SIZE,
+                Config.WRITE_BEHIND_FLUSH_INTERVAL, TimeUnit.SECONDS) : null;
+
+        if (scheduler != null)
+            scheduler.close();
+        scheduler = null;
+        if (Config.REFRESH_ENABLED) {
+            scheduler = new RefreshScheduler(refresher, Config.REFRESH_REQUESTS_PER_MINUTE, Config.REFRESH_UNUSED_DAYS);
+            scheduler.load(backend);
+        }
+    }
+
+    /**
+     * Closes the storage engine, call it when the plugin gets disabled
+     */
+    public static void close() {
+        if (scheduler != null)
+            scheduler.close();
+        if (writeQueue != null)
+            writeQueue.close();
+        if (backend != null)
+            backend.close();
+    }
+
+    /**
+     * Returns the storage engine, use it directly to avoid blocking the
+     * calling thread. Keep in mind it bypasses the caches and the write queue.
+     */
+    public static SkinStorageBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Waits for a backend operation, unwrapping its failure
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StorageException)
+                throw (StorageException) e.getCause();
+            throw new StorageException(e.getCause() == null ? e : e.getCause());
+        }
     }
 
     /**
@@ -295,16 +466,18 @@ public class SkinStorage {
      **/
     public static void removePlayerSkin(String name) {
         name = name.toLowerCase();
-        if (Config.USE_MYSQL)
-            mysql.execute("delete from " + Config.MYSQL_PLAYERTABLE + " where Nick=?", name);
-        else {
-            File playerFile = new File(
-                    folder.getAbsolutePath() + File.separator + "Players" + File.separator + name + ".player");
-
-            if (playerFile.exists())
-                playerFile.delete();
+        // write through, a concurrent read can't put the old skin back
+        playerCache.put(name, null, TimeUnit.MINUTES.toMillis(Config.PLAYER_CACHE_EXPIRES_AFTER));
+        refresher.changed(name, null);
+        if (writeQueue != null) {
+            writeQueue.removePlayerSkin(name);
+            return;
+        }
+        try {
+            await(backend.removePlayerSkin(name));
+        } catch (StorageException e) {
+            e.printStackTrace();
         }
-
     }
 
     /**
@@ -314,16 +487,18 @@ public class SkinStorage {
      **/
     public static void removeSkinData(String name) {
         name = name.toLowerCase();
-        if (Config.USE_MYSQL)
-            mysql.execute("delete from " + Config.MYSQL_SKINTABLE + " where Nick=?", name);
-        else {
-            File skinFile = new File(
-                    folder.getAbsolutePath() + File.separator + "Skins" + File.separator + name + ".skin");
-
-            if (skinFile.exists())
-                skinFile.delete();
+        skinCache.invalidate(name);
+        if (scheduler != null)
+            scheduler.removed(name);
+        if (writeQueue != null) {
+            writeQueue.removeSkin(name);
+            return;
+        }
+        try {
+            await(backend.removeSkin(name));
+        } catch (StorageException e) {
+            e.printStackTrace();
         }
-
     }
 
     /**
@@ -334,33 +509,22 @@ public class SkinStorage {
      **/
     public static void setPlayerSkin(String name, String skin) {
         name = name.toLowerCase();
-        if (Config.USE_MYSQL) {
-            CachedRowSet crs = mysql.query("select * from " + Config.MYSQL_PLAYERTABLE + " where Nick=?", name);
 
-            if (crs == null)
-                mysql.execute("insert into " + Config.MYSQL_PLAYERTABLE + " (Nick, Skin) values (?,?)", name, skin);
-            else
-                mysql.execute("update " + Config.MYSQL_PLAYERTABLE + " set Skin=? where Nick=?", skin, name);
-        } else {
-            File playerFile = new File(
-                    folder.getAbsolutePath() + File.separator + "Players" + File.separator + name + ".player");
-
-            try {
-                if (skin.equalsIgnoreCase(name) && playerFile.exists()) {
-                    playerFile.delete();
-                    return;
-                }
-
-                if (!playerFile.exists())
-                    playerFile.createNewFile();
-
-                FileWriter writer = new FileWriter(playerFile);
+        if (skin.equalsIgnoreCase(name)) {
+            removePlayerSkin(name);
+            return;
+        }
 
-                writer.write(skin);
-                writer.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        playerCache.put(name, skin, TimeUnit.MINUTES.toMillis(Config.PLAYER_CACHE_EXPIRES_AFTER));
+        refresher.changed(name, skin);
+        if (writeQueue != null) {
+            writeQueue.setPlayerSkin(name, skin);
+            return;
+        }
+        try {
+            await(backend.setPlayerSkin(name, skin));
+        } catch (StorageException e) {
+            e.printStackTrace();
         }
     }
 
@@ -374,56 +538,82 @@ public class SkinStorage {
         name = name.toLowerCase();
         String value = "";
         String signature = "";
-        String timestamp = "";
         try {
             value = (String) ReflectionUtil.invokeMethod(textures, "getValue");
             signature = (String) ReflectionUtil.invokeMethod(textures, "getSignature");
-            timestamp = String.valueOf(System.currentTimeMillis());
         } catch (Exception e) {
         }
 
-        if (Config.USE_MYSQL) {
-            CachedRowSet crs = mysql.query("select * from " + Config.MYSQL_SKINTABLE + " where Nick=?", name);
-
-            if (crs == null)
-                mysql.execute("insert into " + Config.MYSQL_SKINTABLE + " (Nick, Value, Signature, timestamp) values (?,?,?,?)",
-                        name, value, signature, timestamp);
-            else
-                mysql.execute("update " + Config.MYSQL_SKINTABLE + " set Value=?, Signature=?, timestamp=? where Nick=?", value,
-                        signature, timestamp, name);
-        } else {
-            File skinFile = new File(
-                    folder.getAbsolutePath() + File.separator + "Skins" + File.separator + name + ".skin");
+        if (value == null || value.isEmpty() || signature == null || signature.isEmpty()) {
+            skinCache.invalidate(name);
+            return;
+        }
 
-            try {
-                if (value.isEmpty() || signature.isEmpty() || timestamp.isEmpty())
-                    return;
+        SkinRecord record = new SkinRecord(value, signature, System.currentTimeMillis());
+        skinCache.put(name, record, TimeUnit.MINUTES.toMillis(Config.SKIN_EXPIRES_AFTER));
+        if (scheduler != null)
+            scheduler.saved(name, record.getTimestamp());
+        if (writeQueue != null) {
+            writeQueue.setSkin(name, record);
+            return;
+        }
+        try {
+            await(backend.setSkin(name, record));
+        } catch (StorageException e) {
+            e.printStackTrace();
+        }
+    }
 
-                if (!skinFile.exists())
-                    skinFile.createNewFile();
+    /**
+     * Lists skins for the menu, sorted by name
+     *
+     * @param number - Skins to skip
+     * @param limit  - Skins to return at most
+     * @return Skin name -> property object, null if it can't be read
+     */
+    public static Map<String, Object> getSkins(int number, int limit) {
+        Map<String, Object> list = new TreeMap<String, Object>();
+        Map<String, WriteBehindQueue.Write> pending = writeQueue == null
+                ? Collections.<String, WriteBehindQueue.Write>emptyMap() : writeQueue.getPendingSkins();
+        List<String> page;
 
-                FileWriter writer = new FileWriter(skinFile);
+        try {
+            if (pending.isEmpty()) {
+                page = await(backend.getSkinNames(number, limit));
+            } else {
+                // queued skins aren't stored yet, so merge them into everything
+                // up to the end of the page. Removals can take names out of it,
+                // fetch that many more.
+                int removals = 0;
+                for (WriteBehindQueue.Write write : pending.values())
+                    if (write.isRemoval())
+                        removals++;
+
+                int fetch = number + limit + removals;
+                List<String> stored = await(backend.getSkinNames(0, fetch));
+                TreeSet<String> names = new TreeSet<>(stored);
+                String last = stored.isEmpty() ? null : stored.get(stored.size() - 1);
+
+                for (Map.Entry<String, WriteBehindQueue.Write> e : pending.entrySet()) {
+                    if (e.getValue().isRemoval())
+                        names.remove(e.getKey());
+                    else if (stored.size() < fetch || e.getKey().compareTo(last) < 0)
+                        names.add(e.getKey());
+                }
 
-                writer.write(value + "\n" + signature + "\n" + timestamp);
-                writer.close();
-            } catch (Exception e) {
-                e.printStackTrace();
+                page = new ArrayList<>(names);
+                page = page.subList(Math.min(number, page.size()), Math.min(number + limit, page.size()));
             }
+        } catch (StorageException e) {
+            e.printStackTrace();
+            return list;
         }
-    }
 
-    public static Map<String, Object> getSkins(int number) {
-        ConcurrentHashMap<String, Object> thingy = new ConcurrentHashMap<String, Object>();
-        Map<String, Object> list = new TreeMap<String, Object>(thingy);
-        String path = SkinsRestorer.getInstance().getDataFolder() + "/Skins/";
-        File folder = new File(path);
-        String[] fileNames = folder.list();
-        int i = 0;
-        for (String file : fileNames) {
-            if (i >= number) {
-                list.put(file.replace(".skin", ""), SkinStorage.getSkinDataMenu(file.replace(".skin", "")));
-            }
-            i++;
+        // one lookup for the whole page instead of one per skull
+        Map<String, SkinRecord> records = getSkinRecords(page);
+        for (String name : page) {
+            SkinRecord record = records.get(name.toLowerCase());
+            list.put(name, record == null ? null : record.toProperty());
         }
         return list;
     }
@@ -431,54 +621,8 @@ public class SkinStorage {
 
     //Getting skin data for menu
     public static Object getSkinDataMenu(String name) {
-        name = name.toLowerCase();
-        if (Config.USE_MYSQL) {
-
-            CachedRowSet crs = mysql.query("select * from " + Config.MYSQL_SKINTABLE + " where Nick=?", name);
-            if (crs != null)
-                try {
-                    String value = crs.getString("Value");
-                    String signature = crs.getString("Signature");
-                    @SuppressWarnings("unused")
-                    String timestamp = crs.getString("timestamp");
-
-                    return createProperty("textures", value, signature);
-
-                } catch (Exception e) {
-                    System.out.println("[SkinsRestorer] Unsupported player format.. removing (" + name + ").");
-                }
-
-            return null;
+        SkinRecord record = getSkinRecord(name.toLowerCase(), false);
 
-        } else {
-            File skinFile = new File(
-                    folder.getAbsolutePath() + File.separator + "Skins" + File.separator + name + ".skin");
-
-            try {
-                if (!skinFile.exists())
-                    return null;
-
-                BufferedReader buf = new BufferedReader(new FileReader(skinFile));
-
-                @SuppressWarnings("unused")
-                String line, value = "", signature = "", timestamp = "";
-                for (int i = 0; i < 3; i++)
-                    if ((line = buf.readLine()) != null)
-                        if (value.isEmpty()) {
-                            value = line;
-                        } else if (signature.isEmpty()) {
-                            signature = line;
-                        } else {
-                            timestamp = line;
-                        }
-                buf.close();
-                return SkinStorage.createProperty("textures", value, signature);
-
-            } catch (Exception e) {
-                System.out.println("[SkinsRestorer] Unsupported player format.. removing (" + name + ").");
-            }
-
-            return null;
-        }
+        return record == null ? null : record.toProperty();
     }
 }
@@ -0,0 +1,150 @@
+package skinsrestorer.shared.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage engine behind {@link SkinStorage}.
+ * <p>
+ * Every operation runs asynchronously, names are always passed lowercase.
+ * Lookups complete with null when nothing is stored and complete
+ * exceptionally when the stored data can't be read.
+ */
+public interface SkinStorageBackend {
+
+    /**
+     * @param name - Skin name
+     * @return Stored skin data or null
+     */
+    CompletableFuture<SkinRecord> getSkin(String name);
+
+    /**
+     * Looks up several skins at once, backends that can read them in one go
+     * should override it. Skins that aren't stored or can't be read are left
+     * out of the result.
+     *
+     * @param names - Skin names
+     * @return Skin name -> stored skin data
+     */
+    default CompletableFuture<Map<String, SkinRecord>> getSkins(Collection<String> names) {
+        final Map<String, CompletableFuture<SkinRecord>> futures = new HashMap<>();
+        for (String name : names)
+            futures.put(name, getSkin(name));
+        return collect(futures);
+    }
+
+    /**
+     * @param name   - Skin name
+     * @param record - Skin data
+     */
+    CompletableFuture<Void> setSkin(String name, SkinRecord record);
+
+    /**
+     * Saves several skins at once, backends that can write them in one go
+     * should override it
+     *
+     * @param records - Skin name -> skin data
+     */
+    default CompletableFuture<Void> setSkins(Map<String, SkinRecord> records) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<String, SkinRecord> e : records.entrySet())
+            futures.add(setSkin(e.getKey(), e.getValue()));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @param name - Skin name
+     */
+    CompletableFuture<Void> removeSkin(String name);
+
+    /**
+     * @param name - Players name
+     * @return Skin name the player has set or null
+     */
+    CompletableFuture<String> getPlayerSkin(String name);
+
+    /**
+     * Looks up the skins of several players at once, backends that can read
+     * them in one go should override it. Players without a stored skin are
+     * left out of the result.
+     *
+     * @param names - Players names
+     * @return Players name -> skin name
+     */
+    default CompletableFuture<Map<String, String>> getPlayerSkins(Collection<String> names) {
+        final Map<String, CompletableFuture<String>> futures = new HashMap<>();
+        for (String name : names)
+            futures.put(name, getPlayerSkin(name));
+        return collect(futures);
+    }
+
+    /**
+     * @param name - Players name
+     * @param skin - Skin name
+     */
+    CompletableFuture<Void> setPlayerSkin(String name, String skin);
+
+    /**
+     * Saves several players' skins at once, backends that can write them in
+     * one go should override it
+     *
+     * @param skins - Players name -> skin name
+     */
+    default CompletableFuture<Void> setPlayerSkins(Map<String, String> skins) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<String, String> e : skins.entrySet())
+            futures.add(setPlayerSkin(e.getKey(), e.getValue()));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @param name - Players name
+     */
+    CompletableFuture<Void> removePlayerSkin(String name);
+
+    /**
+     * @return Names of all stored skins, sorted
+     */
+    CompletableFuture<List<String>> getSkinNames();
+
+    /**
+     * One page of {@link #getSkinNames()}, backends that can page on their
+     * own should override it
+     *
+     * @param offset - Names to skip
+     * @param limit  - Names to return at most
+     */
+    default CompletableFuture<List<String>> getSkinNames(final int offset, final int limit) {
+        return getSkinNames().thenApply(names -> {
+            int from = Math.min(offset, names.size());
+            return new ArrayList<>(names.subList(from, from + Math.min(limit, names.size() - from)));
+        });
+    }
+
+    /**
+     * Waits for every lookup, keeping the ones that found something
+     */
+    static <T> CompletableFuture<Map<String, T>> collect(final Map<String, CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.values().stream()
+                .map(f -> f.exceptionally(e -> null))
+                .toArray(CompletableFuture<?>[]::new))
+                .thenApply(v -> {
+                    Map<String, T> found = new HashMap<>();
+                    for (Map.Entry<String, CompletableFuture<T>> e : futures.entrySet()) {
+                        T value = e.getValue().exceptionally(ex -> null).join();
+                        if (value != null)
+                            found.put(e.getKey(), value);
+                    }
+                    return found;
+                });
+    }
+
+    /**
+     * Releases files or connections held by the backend
+     */
+    void close();
+}
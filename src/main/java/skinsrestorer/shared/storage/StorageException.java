@@ -0,0 +1,37 @@
+package skinsrestorer.shared.storage;
+
+/**
+ * Thrown (usually wrapped in a CompletionException) when a
+ * {@link SkinStorageBackend} fails to read or write data.
+ */
+public class StorageException extends RuntimeException {
+
+    private static final long serialVersionUID = -3514640592786404571L;
+
+    private final boolean unreadable;
+
+    public StorageException(String message) {
+        super(message);
+        this.unreadable = false;
+    }
+
+    public StorageException(Throwable cause) {
+        this(cause, false);
+    }
+
+    /**
+     * @param unreadable - Whether the data is stored but can't be parsed
+     */
+    public StorageException(Throwable cause, boolean unreadable) {
+        super(cause.getMessage(), cause);
+        this.unreadable = unreadable;
+    }
+
+    /**
+     * @return Whether the data is stored but can't be parsed, as opposed to
+     * the backend failing. Only then it is safe to remove it.
+     */
+    public boolean isUnreadable() {
+        return unreadable;
+    }
+}
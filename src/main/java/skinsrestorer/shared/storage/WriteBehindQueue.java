@@ -0,0 +1,322 @@
+package skinsrestorer.shared.storage;
+
+import skinsrestorer.shared.utils.CircuitBreaker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers writes to a {@link SkinStorageBackend} and flushes them in batches.
+ * <p>
+ * Writes are coalesced by key, only the last write for a skin or player is
+ * kept. The queue is flushed every flush interval, as soon as it holds a full
+ * batch, and when it gets closed. Callers block (backpressure) once the queue
+ * is more than ten batches deep. Writes the backend rejects are queued again,
+ * unless a newer write for the same key came in meanwhile, and retried with
+ * backoff.
+ */
+public class WriteBehindQueue {
+
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    private final SkinStorageBackend backend;
+    private final int batchSize;
+    private final Object lock = new Object();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+    private final long flushInterval;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private LinkedHashMap<String, Write> pending = new LinkedHashMap<>();
+    private volatile Map<String, Write> flushing = Collections.emptyMap();
+    private int failedRounds;
+    private long retryAt;
+
+    public WriteBehindQueue(SkinStorageBackend backend, int batchSize, long flushInterval, TimeUnit unit) {
+        this.backend = backend;
+        this.batchSize = Math.max(batchSize, 1);
+        this.flushInterval = unit.toMillis(flushInterval);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SkinsRestorer Write-Behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> flush(false), flushInterval, flushInterval, unit);
+    }
+
+    private static String key(boolean skin, String name) {
+        return (skin ? "s:" : "p:") + name;
+    }
+
+    public void setSkin(String name, SkinRecord record) {
+        enqueue(new Write(true, name, record, null));
+    }
+
+    public void removeSkin(String name) {
+        enqueue(new Write(true, name, null, null));
+    }
+
+    public void setPlayerSkin(String name, String skin) {
+        enqueue(new Write(false, name, null, skin));
+    }
+
+    public void removePlayerSkin(String name) {
+        enqueue(new Write(false, name, null, null));
+    }
+
+    private void enqueue(Write write) {
+        int depth;
+
+        synchronized (lock) {
+            if (pending.remove(key(write.skin, write.name)) != null)
+                coalesced.incrementAndGet();
+            pending.put(key(write.skin, write.name), write);
+            depth = pending.size();
+        }
+
+        // a closed queue has no timer left, so writes go out right away
+        if (flusher.isShutdown() || depth >= batchSize * 10 || (depth >= batchSize && !scheduleFlush()))
+            flush(false);
+    }
+
+    /**
+     * @return Whether the flush got handed to the flusher, false if it shut
+     * down in the meantime
+     */
+    private boolean scheduleFlush() {
+        try {
+            flusher.execute(() -> flush(false));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the queued (or currently flushing) write for the skin, or null
+     * if there is none and the backend is up to date
+     */
+    public Write getPendingSkin(String name) {
+        return getPending(key(true, name));
+    }
+
+    /**
+     * Returns the queued (or currently flushing) write for the player, or null
+     * if there is none and the backend is up to date
+     */
+    public Write getPendingPlayer(String name) {
+        return getPending(key(false, name));
+    }
+
+    /**
+     * @return Skin name -> queued (or currently flushing) write, for skins the
+     * backend may not list yet
+     */
+    public Map<String, Write> getPendingSkins() {
+        Map<String, Write> skins = new HashMap<>();
+
+        synchronized (lock) {
+            for (Write write : flushing.values())
+                if (write.skin)
+                    skins.put(write.name, write);
+            for (Write write : pending.values())
+                if (write.skin)
+                    skins.put(write.name, write);
+        }
+        return skins;
+    }
+
+    private Write getPending(String key) {
+        // under the lock, a failed write moves back to pending atomically
+        synchronized (lock) {
+            Write write = pending.get(key);
+            return write != null ? write : flushing.get(key);
+        }
+    }
+
+    /**
+     * Writes everything queued so far to the backend and waits for it, even
+     * if a retry isn't due yet
+     */
+    public void flush() {
+        flush(true);
+    }
+
+    private void flush(boolean force) {
+        synchronized (flushLock) {
+            Map<String, Write> batch;
+
+            synchronized (lock) {
+                if (pending.isEmpty() || (!force && System.currentTimeMillis() < retryAt))
+                    return;
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                flushing = batch;
+            }
+
+            List<Write> failed = new ArrayList<>();
+            try {
+                List<Write> writes = new ArrayList<>(batch.values());
+                for (int i = 0; i < writes.size(); i += batchSize)
+                    failed.addAll(writeBatch(writes.subList(i, Math.min(i + batchSize, writes.size()))));
+            } finally {
+                synchronized (lock) {
+                    requeue(batch, failed);
+                    flushing = Collections.emptyMap();
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts failed writes back in front of the queue, newer writes for the
+     * same key win. Called with the lock held.
+     */
+    private void requeue(Map<String, Write> batch, List<Write> failed) {
+        if (failed.isEmpty()) {
+            failedRounds = 0;
+            retryAt = 0;
+            return;
+        }
+
+        LinkedHashMap<String, Write> queue = new LinkedHashMap<>();
+        for (Write write : failed)
+            queue.put(key(write.skin, write.name), write);
+        for (Map.Entry<String, Write> e : pending.entrySet())
+            queue.put(e.getKey(), e.getValue());
+        pending = queue;
+
+        long delay = CircuitBreaker.backoff(flushInterval, Math.max(flushInterval, MAX_RETRY_DELAY), failedRounds++);
+        retryAt = System.currentTimeMillis() + delay;
+        System.out.println("[SkinsRestorer] " + failed.size() + " writes failed, retrying in " + delay / 1000 + "s.");
+    }
+
+    /**
+     * Saves go to the backend in one call per table, so it can batch them.
+     * Removals are rare and sent one by one.
+     *
+     * @return Writes that failed
+     */
+    private List<Write> writeBatch(List<Write> writes) {
+        Map<String, SkinRecord> skins = new LinkedHashMap<>();
+        Map<String, String> players = new LinkedHashMap<>();
+        List<Write> skinWrites = new ArrayList<>();
+        List<Write> playerWrites = new ArrayList<>();
+        List<Write> removals = new ArrayList<>();
+
+        for (Write write : writes)
+            if (write.isRemoval()) {
+                removals.add(write);
+            } else if (write.skin) {
+                skins.put(write.name, write.record);
+                skinWrites.add(write);
+            } else {
+                players.put(write.name, write.playerSkin);
+                playerWrites.add(write);
+            }
+
+        CompletableFuture<Void> skinsSaved = skins.isEmpty() ? null : backend.setSkins(skins);
+        CompletableFuture<Void> playersSaved = players.isEmpty() ? null : backend.setPlayerSkins(players);
+        List<CompletableFuture<Void>> removed = new ArrayList<>(removals.size());
+        for (Write write : removals)
+            removed.add(write.skin ? backend.removeSkin(write.name) : backend.removePlayerSkin(write.name));
+
+        List<Write> failed = new ArrayList<>();
+        if (skinsSaved != null && !await(skinsSaved, skins.size(), skins.size() + " skins"))
+            failed.addAll(skinWrites);
+        if (playersSaved != null && !await(playersSaved, players.size(), players.size() + " players"))
+            failed.addAll(playerWrites);
+        for (int i = 0; i < removed.size(); i++)
+            if (!await(removed.get(i), 1, (removals.get(i).skin ? "skin " : "player ") + removals.get(i).name))
+                failed.add(removals.get(i));
+        return failed;
+    }
+
+    private boolean await(CompletableFuture<Void> future, int writes, String what) {
+        try {
+            future.join();
+            written.addAndGet(writes);
+            return true;
+        } catch (Exception e) {
+            System.out.println("[SkinsRestorer] Could not save " + what + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return Number of writes waiting to be flushed
+     */
+    public int getDepth() {
+        synchronized (lock) {
+            return pending.size() + flushing.size();
+        }
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Stops the flush timer and writes everything that is still queued
+     */
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        int lost = getDepth();
+        if (lost > 0)
+            System.out.println("[SkinsRestorer] " + lost + " writes could not be saved before shutting down.");
+    }
+
+    public static class Write {
+
+        private final boolean skin;
+        private final String name;
+        private final SkinRecord record;
+        private final String playerSkin;
+
+        private Write(boolean skin, String name, SkinRecord record, String playerSkin) {
+            this.skin = skin;
+            this.name = name;
+            this.record = record;
+            this.playerSkin = playerSkin;
+        }
+
+        public boolean isRemoval() {
+            return record == null && playerSkin == null;
+        }
+
+        /**
+         * @return Skin data that is being saved, null for removals
+         */
+        public SkinRecord getRecord() {
+            return record;
+        }
+
+        /**
+         * @return Skin name the player is being saved with, null for removals
+         */
+        public String getPlayerSkin() {
+            return playerSkin;
+        }
+    }
+}
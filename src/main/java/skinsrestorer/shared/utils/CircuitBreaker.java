@@ -0,0 +1,134 @@
+package skinsrestorer.shared.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stops sending requests to something that keeps failing.
+ * <p>
+ * After a number of failures in a row the breaker opens and rejects every
+ * request for a while. Then it lets one trial request through (half open),
+ * which either closes it again or opens it for another round. Every round
+ * in a row lasts twice as long as the one before, up to a maximum, with some
+ * jitter so several servers don't all retry at the same moment.
+ */
+public class CircuitBreaker {
+
+    private final int threshold;
+    private final long openFor;
+    private final long maxOpenFor;
+    private State state = State.CLOSED;
+    private int failures;
+    private int rounds;
+    private long openUntil;
+    private boolean trialRunning;
+
+    /**
+     * @param threshold - Failures in a row that open the breaker
+     * @param openFor   - Milliseconds to stay open
+     */
+    public CircuitBreaker(int threshold, long openFor) {
+        this(threshold, openFor, openFor);
+    }
+
+    /**
+     * @param threshold  - Failures in a row that open the breaker
+     * @param openFor    - Milliseconds to stay open the first round
+     * @param maxOpenFor - Milliseconds to stay open at most
+     */
+    public CircuitBreaker(int threshold, long openFor, long maxOpenFor) {
+        this.threshold = Math.max(threshold, 1);
+        this.openFor = openFor;
+        this.maxOpenFor = Math.max(openFor, maxOpenFor);
+    }
+
+    /**
+     * @return Whether a request may be sent now, a half open breaker lets
+     * only one through
+     */
+    public synchronized boolean allowRequest() {
+        update();
+
+        if (state == State.CLOSED)
+            return true;
+
+        if (state == State.HALF_OPEN && !trialRunning) {
+            trialRunning = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        failures = 0;
+        rounds = 0;
+        trialRunning = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        trialRunning = false;
+
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= threshold))
+            open(backoff(openFor, maxOpenFor, rounds++));
+    }
+
+    /**
+     * Gives the half open trial back when the request ended without an
+     * outcome, so the next one can be the trial
+     */
+    public synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN)
+            trialRunning = false;
+    }
+
+    /**
+     * Opens the breaker right away, for example because the other side asked
+     * for a break. An open breaker only ever gets extended.
+     *
+     * @param millis - Milliseconds to stay open at least
+     */
+    public synchronized void open(long millis) {
+        trialRunning = false;
+        openUntil = Math.max(state == State.OPEN ? openUntil : 0, System.currentTimeMillis() + millis);
+        state = State.OPEN;
+    }
+
+    private void update() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+    }
+
+    public synchronized State getState() {
+        update();
+        return state;
+    }
+
+    /**
+     * @return Milliseconds until the open breaker lets a trial through, 0 if
+     * it isn't open
+     */
+    public synchronized long getRemaining() {
+        update();
+        return state == State.OPEN ? openUntil - System.currentTimeMillis() : 0;
+    }
+
+    /**
+     * Exponential backoff with jitter, the delay is drawn from the upper half
+     * of the doubled base so it never gets much shorter than intended
+     *
+     * @param attempt - 0 for the first delay
+     * @return Milliseconds to wait
+     */
+    public static long backoff(long base, long max, int attempt) {
+        long delay = Math.min(max, base << Math.min(attempt, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
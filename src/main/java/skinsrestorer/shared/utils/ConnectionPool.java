@@ -0,0 +1,496 @@
+package skinsrestorer.shared.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of JDBC connections.
+ * <p>
+ * Borrowed connections go back to the pool when they get closed. Idle ones
+ * are validated before being handed out again and retired once they reach
+ * their max lifetime, so dropped connections are replaced without callers
+ * noticing. A connection held longer than the leak threshold is reported
+ * once, with the stack trace of where it was borrowed.
+ * <p>
+ * Each connection keeps its most recently used prepared statements, so
+ * preparing the same SQL again reuses the statement the server already
+ * parsed. Closing such a statement only clears its parameters.
+ */
+public class ConnectionPool {
+
+    // idle connections used again within this time are trusted without a round trip
+    private static final long VALIDATION_BYPASS = 500;
+    private static final int VALIDATION_TIMEOUT = 3;
+
+    private final String url, username, password;
+    private final int maxSize;
+    private final long maxLifetime;
+    private final long connectionTimeout;
+    private final long leakThreshold;
+    private final int statementCacheSize;
+    private final Deque<Pooled> idle = new ArrayDeque<>();
+    private final List<Pooled> borrowed = new ArrayList<>();
+    private final ScheduledExecutorService leakDetector;
+    private int total;
+    private boolean closed;
+    private long borrows;
+    private long waitTime;
+    private long maxWait;
+    private long timeouts;
+    private long created;
+    private long leaks;
+    private long statementHits;
+    private long statementMisses;
+
+    /**
+     * @param maxLifetime        - Milliseconds a connection may be used, 0 for no limit
+     * @param connectionTimeout  - Milliseconds to wait for a connection
+     * @param leakThreshold      - Milliseconds a connection may be held, 0 to not check
+     * @param statementCacheSize - Prepared statements kept per connection, 0 to not keep any
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize, long maxLifetime,
+                          long connectionTimeout, long leakThreshold, int statementCacheSize) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = Math.max(maxSize, 1);
+        this.maxLifetime = maxLifetime;
+        this.connectionTimeout = connectionTimeout;
+        this.leakThreshold = leakThreshold;
+        this.statementCacheSize = Math.max(statementCacheSize, 0);
+
+        if (leakThreshold > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "SkinsRestorer MySQL Leak Detector");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(leakThreshold / 2, 1000);
+            leakDetector.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * Borrows a connection, close it to give it back
+     *
+     * @throws SQLException - If none became available in time or the database can't be reached
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.currentTimeMillis();
+        long deadline = start + connectionTimeout;
+
+        while (true) {
+            Pooled pooled = null;
+            boolean create = false;
+
+            synchronized (this) {
+                while (!closed && idle.isEmpty() && total >= maxSize) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) {
+                        timeouts++;
+                        throw new SQLTimeoutException("No MySQL connection available within " + connectionTimeout + "ms ("
+                                + borrowed.size() + " in use)");
+                    }
+                    try {
+                        wait(left);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a MySQL connection");
+                    }
+                }
+
+                if (closed)
+                    throw new SQLException("Connection pool is closed");
+
+                if (!idle.isEmpty()) {
+                    pooled = idle.pollFirst();
+                } else {
+                    // reserve the slot, the connection gets opened outside the lock
+                    total++;
+                    create = true;
+                }
+            }
+
+            if (create) {
+                try {
+                    pooled = new Pooled(DriverManager.getConnection(url, username, password));
+                } catch (SQLException | RuntimeException e) {
+                    release();
+                    throw e;
+                }
+                synchronized (this) {
+                    created++;
+                }
+            } else if (!isUsable(pooled)) {
+                retire(pooled);
+                continue;
+            }
+
+            synchronized (this) {
+                long waited = System.currentTimeMillis() - start;
+                borrows++;
+                waitTime += waited;
+                maxWait = Math.max(maxWait, waited);
+                pooled.borrowedAt = System.currentTimeMillis();
+                pooled.borrowedBy = leakThreshold > 0 ? new Exception("Connection borrowed here") : null;
+                pooled.reported = false;
+                borrowed.add(pooled);
+            }
+            return pooled.proxy();
+        }
+    }
+
+    private boolean isUsable(Pooled pooled) {
+        if (maxLifetime > 0 && System.currentTimeMillis() - pooled.createdAt >= maxLifetime)
+            return false;
+
+        try {
+            if (System.currentTimeMillis() - pooled.returnedAt < VALIDATION_BYPASS)
+                return !pooled.con.isClosed();
+            return pooled.con.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void giveBack(Pooled pooled) {
+        boolean keep = true;
+
+        // the next borrower expects a connection in its default state
+        try {
+            if (!pooled.con.getAutoCommit()) {
+                pooled.con.rollback();
+                pooled.con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            keep = false;
+        }
+
+        synchronized (this) {
+            if (!borrowed.remove(pooled))
+                return;
+            pooled.returnedAt = System.currentTimeMillis();
+            keep &= !closed && (maxLifetime <= 0 || pooled.returnedAt - pooled.createdAt < maxLifetime);
+            if (keep) {
+                idle.addFirst(pooled);
+                notifyAll();
+            }
+        }
+
+        if (!keep)
+            retire(pooled);
+    }
+
+    private void retire(Pooled pooled) {
+        try {
+            pooled.con.close();
+        } catch (SQLException e) {
+        }
+        release();
+    }
+
+    private synchronized void release() {
+        total--;
+        notifyAll();
+    }
+
+    private void detectLeaks() {
+        List<Pooled> leaked = new ArrayList<>();
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Pooled pooled : borrowed)
+                if (!pooled.reported && now - pooled.borrowedAt >= leakThreshold) {
+                    pooled.reported = true;
+                    leaks++;
+                    leaked.add(pooled);
+                }
+        }
+
+        for (Pooled pooled : leaked) {
+            System.out.println("[SkinsRestorer] A MySQL connection is in use for more than " + leakThreshold
+                    + "ms, it may have leaked:");
+            pooled.borrowedBy.printStackTrace(System.out);
+        }
+    }
+
+    /**
+     * Closes the idle connections, borrowed ones get closed when they are given back
+     */
+    public void close() {
+        List<Pooled> closing;
+
+        synchronized (this) {
+            closed = true;
+            closing = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+
+        for (Pooled pooled : closing)
+            retire(pooled);
+
+        if (leakDetector != null)
+            leakDetector.shutdownNow();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getActive() {
+        return borrowed.size();
+    }
+
+    public synchronized int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * @return Number of connections opened since the pool was created
+     */
+    public synchronized long getCreated() {
+        return created;
+    }
+
+    public synchronized long getBorrows() {
+        return borrows;
+    }
+
+    /**
+     * @return Average milliseconds callers waited for a connection
+     */
+    public synchronized double getAverageWait() {
+        return borrows == 0 ? 0 : (double) waitTime / borrows;
+    }
+
+    public synchronized long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @return Number of callers that gave up waiting for a connection
+     */
+    public synchronized long getTimeouts() {
+        return timeouts;
+    }
+
+    public synchronized long getLeaks() {
+        return leaks;
+    }
+
+    /**
+     * @return Number of statements that were prepared on the connection already
+     */
+    public synchronized long getStatementHits() {
+        return statementHits;
+    }
+
+    /**
+     * @return Number of statements that had to be prepared by the server
+     */
+    public synchronized long getStatementMisses() {
+        return statementMisses;
+    }
+
+    private class Pooled {
+
+        private final Connection con;
+        private final long createdAt = System.currentTimeMillis();
+        private long returnedAt;
+        private long borrowedAt;
+        private Exception borrowedBy;
+        private boolean reported;
+        // only used by the thread holding the connection, least recently used first
+        private final Map<String, Cached> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Pooled(Connection con) {
+            this.con = con;
+        }
+
+        private PreparedStatement prepare(String sql, Connection handle) throws SQLException {
+            Cached cached = statements.get(sql);
+
+            if (cached != null && cached.ps.isClosed()) {
+                statements.remove(sql);
+                cached = null;
+            }
+
+            if (cached != null && cached.inUse) {
+                // prepared twice in one go, the second one can't be shared
+                synchronized (ConnectionPool.this) {
+                    statementMisses++;
+                }
+                return con.prepareStatement(sql);
+            }
+
+            synchronized (ConnectionPool.this) {
+                if (cached != null)
+                    statementHits++;
+                else
+                    statementMisses++;
+            }
+
+            if (cached == null) {
+                cached = new Cached(con.prepareStatement(sql));
+                statements.put(sql, cached);
+                evict();
+            }
+
+            cached.inUse = true;
+            return cached.proxy(handle);
+        }
+
+        private void evict() {
+            Iterator<Cached> it = statements.values().iterator();
+
+            while (statements.size() > statementCacheSize && it.hasNext()) {
+                Cached eldest = it.next();
+                it.remove();
+                eldest.evicted = true;
+                if (!eldest.inUse)
+                    eldest.close();
+            }
+        }
+
+        /**
+         * @return Handle for one borrow, closing it gives the connection back
+         */
+        private Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    new InvocationHandler() {
+                        private boolean returned;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            switch (method.getName()) {
+                                case "close":
+                                    if (!returned) {
+                                        returned = true;
+                                        giveBack(Pooled.this);
+                                    }
+                                    return null;
+                                case "isClosed":
+                                    return returned || con.isClosed();
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                case "toString":
+                                    return "Pooled " + con;
+                            }
+
+                            if (returned)
+                                throw new SQLException("Connection was given back to the pool already");
+                            if (method.getName().equals("prepareStatement") && args.length == 1 && statementCacheSize > 0)
+                                return prepare((String) args[0], (Connection) proxy);
+                            try {
+                                return method.invoke(con, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Prepared statement kept open on its connection
+     */
+    private static class Cached {
+
+        private final PreparedStatement ps;
+        private boolean inUse;
+        private boolean evicted;
+
+        private Cached(PreparedStatement ps) {
+            this.ps = ps;
+        }
+
+        private void close() {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+            }
+        }
+
+        /**
+         * @return Handle for one use, closing it keeps the statement open
+         */
+        private PreparedStatement proxy(final Connection handle) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                        private boolean closed;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            switch (method.getName()) {
+                                case "close":
+                                    if (!closed) {
+                                        closed = true;
+                                        release();
+                                    }
+                                    return null;
+                                case "isClosed":
+                                    return closed || ps.isClosed();
+                                case "getConnection":
+                                    return handle;
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                case "toString":
+                                    return "Cached " + ps;
+                            }
+
+                            if (closed)
+                                throw new SQLException("Statement is closed");
+                            try {
+                                return method.invoke(ps, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    });
+        }
+
+        private void release() {
+            inUse = false;
+
+            if (evicted) {
+                close();
+                return;
+            }
+
+            try {
+                ps.clearParameters();
+                ps.clearBatch();
+            } catch (SQLException e) {
+                close();
+            }
+        }
+    }
+}
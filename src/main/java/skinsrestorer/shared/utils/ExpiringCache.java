@@ -0,0 +1,176 @@
+package skinsrestorer.shared.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache where every entry carries its own expiry time.
+ * <p>
+ * Once the maximum size is reached the least recently used entry is dropped.
+ * A cached null value is a valid entry (useful for negative caching), use
+ * {@link #getEntry(Object)} to tell it apart from a miss.
+ */
+public class ExpiringCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> map;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile int maxSize;
+
+    public ExpiringCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 2410914530718394566L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, ExpiringCache.Entry<V>> eldest) {
+                return size() > ExpiringCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the live entry for the key, or null on a miss (absent or expired)
+     */
+    public synchronized Entry<V> getEntry(K key) {
+        Entry<V> entry = map.get(key);
+
+        if (entry != null && entry.isExpired()) {
+            map.remove(key);
+            entry = null;
+        }
+
+        if (entry == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+
+        return entry;
+    }
+
+    /**
+     * Returns the cached value, or null on a miss or a cached null
+     */
+    public V get(K key) {
+        Entry<V> entry = getEntry(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    public synchronized void put(K key, V value, long ttlMillis) {
+        if (maxSize <= 0 || ttlMillis <= 0)
+            return;
+
+        map.put(key, new Entry<V>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Caches the value unless a live entry exists already, so a value loaded
+     * from the database never replaces one that was written meanwhile
+     */
+    public synchronized void putIfAbsent(K key, V value, long ttlMillis) {
+        Entry<V> entry = map.get(key);
+
+        if (entry == null || entry.isExpired())
+            put(key, value, ttlMillis);
+    }
+
+    /**
+     * Same as {@link #put(Object, Object, long)} with an absolute expiry time
+     */
+    public synchronized void putUntil(K key, V value, long expires) {
+        if (maxSize <= 0 || expires <= System.currentTimeMillis())
+            return;
+
+        map.put(key, new Entry<V>(value, expires));
+    }
+
+    /**
+     * @return Copy of the live entries, least recently used first
+     */
+    public synchronized Map<K, Entry<V>> getEntries() {
+        Map<K, Entry<V>> entries = new LinkedHashMap<>();
+        for (Map.Entry<K, Entry<V>> e : map.entrySet())
+            if (!e.getValue().isExpired())
+                entries.put(e.getKey(), e.getValue());
+        return entries;
+    }
+
+    public synchronized void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * Drops every expired entry
+     */
+    public synchronized void cleanUp() {
+        Iterator<Entry<V>> iterator = map.values().iterator();
+        while (iterator.hasNext())
+            if (iterator.next().isExpired())
+                iterator.remove();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+
+        Iterator<K> iterator = map.keySet().iterator();
+        while (map.size() > Math.max(maxSize, 0) && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return hit rate between 0 and 1 (0 if the cache was never queried)
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public static class Entry<V> {
+
+        private final V value;
+        private final long expires;
+
+        private Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public long getExpires() {
+            return expires;
+        }
+
+        public boolean isExpired() {
+            return expires <= System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package skinsrestorer.shared.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP transport for the Mojang, proxy and proxy list requests.
+ * <p>
+ * Bodies (error bodies included) are always read to the end, so the JDK can
+ * hand the connection back to its keep-alive pool. Responses may come
+ * gzipped. Every request has a deadline for the whole exchange, not only per
+ * read. Async requests run on a bounded pool instead of one thread each.
+ * Background work that may wait long for a rate limit token gets a small
+ * pool of its own, so it can't occupy the threads interactive requests need.
+ */
+public class HttpClient {
+
+    private static final int MAX_THREADS = 16;
+    private static final int BACKGROUND_THREADS = 2;
+    private static final AtomicInteger threads = new AtomicInteger();
+    private static final ExecutorService exe = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "SkinsRestorer HTTP #" + threads.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ExecutorService backgroundExe = new ThreadPoolExecutor(BACKGROUND_THREADS, BACKGROUND_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "SkinsRestorer HTTP Background #" + threads.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SkinsRestorer HTTP Deadlines");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        ((ThreadPoolExecutor) exe).allowCoreThreadTimeOut(true);
+        ((ThreadPoolExecutor) backgroundExe).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param proxy   - Proxy to go through, null for a direct connection
+     * @param timeout - Milliseconds the whole request may take
+     */
+    public static Response get(String url, Proxy proxy, long timeout) throws IOException {
+        return send("GET", url, null, proxy, timeout);
+    }
+
+    /**
+     * Posts a JSON body
+     *
+     * @param timeout - Milliseconds the whole request may take
+     */
+    public static Response post(String url, String json, long timeout) throws IOException {
+        return send("POST", url, json, null, timeout);
+    }
+
+    public static CompletableFuture<Response> getAsync(final String url, final Proxy proxy, final long timeout) {
+        return async(() -> get(url, proxy, timeout));
+    }
+
+    public static CompletableFuture<Response> postAsync(final String url, final String json, final long timeout) {
+        return async(() -> post(url, json, timeout));
+    }
+
+    /**
+     * @return Bounded pool running the async requests
+     */
+    public static ExecutorService getExecutor() {
+        return exe;
+    }
+
+    /**
+     * @param background - Whether the work may block for long on a rate limit
+     * @return Pool to run the work on
+     */
+    public static ExecutorService getExecutor(boolean background) {
+        return background ? backgroundExe : exe;
+    }
+
+    private static CompletableFuture<Response> async(final Request request) {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        exe.execute(() -> {
+            try {
+                future.complete(request.send());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    private static Response send(String method, String url, String json, Proxy proxy, long timeout) throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        final HttpURLConnection con = (HttpURLConnection) (proxy == null ? new URL(url).openConnection()
+                : new URL(url).openConnection(proxy));
+
+        con.setRequestMethod(method);
+        con.setRequestProperty("User-Agent", "SkinsRestorer");
+        con.setRequestProperty("Accept-Encoding", "gzip");
+        con.setConnectTimeout((int) timeout);
+        con.setReadTimeout((int) timeout);
+
+        // timeouts only cover single reads, this one covers the whole exchange
+        ScheduledFuture<?> kill = deadlines.schedule(con::disconnect, timeout, TimeUnit.MILLISECONDS);
+        try {
+            if (json != null) {
+                con.setDoOutput(true);
+                con.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = con.getOutputStream()) {
+                    out.write(json.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            int code = con.getResponseCode();
+            InputStream in = code >= 400 ? con.getErrorStream() : con.getInputStream();
+            String body = in == null ? "" : read(in, "gzip".equalsIgnoreCase(con.getContentEncoding()));
+
+            return new Response(code, body, con.getHeaderField("Retry-After"));
+        } catch (IOException e) {
+            if (System.currentTimeMillis() >= deadline)
+                throw new SocketTimeoutException("Request to " + con.getURL().getHost() + " took longer than " + timeout + "ms");
+            throw e;
+        } finally {
+            kill.cancel(false);
+        }
+    }
+
+    private static String read(InputStream in, boolean gzip) throws IOException {
+        try (InputStream stream = gzip ? new GZIPInputStream(in) : in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = stream.read(buf)) != -1)
+                out.write(buf, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private interface Request {
+        Response send() throws IOException;
+    }
+
+    public static class Response {
+
+        private final int code;
+        private final String body;
+        private final String retryAfter;
+
+        private Response(int code, String body, String retryAfter) {
+            this.code = code;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * @return Retry-After header as sent, null if there was none
+         */
+        public String getRetryAfter() {
+            return retryAfter;
+        }
+
+        /**
+         * @return Milliseconds to wait as the Retry-After header says (in
+         * seconds or as a date), -1 if there was none or it was unreadable
+         */
+        public long getRetryAfterMillis() {
+            if (retryAfter == null)
+                return -1;
+
+            try {
+                return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                try {
+                    long until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                            .toInstant().toEpochMilli();
+                    return Math.max(0, until - System.currentTimeMillis());
+                } catch (DateTimeParseException ex) {
+                    return -1;
+                }
+            }
+        }
+    }
+}
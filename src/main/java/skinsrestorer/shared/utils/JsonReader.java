@@ -0,0 +1,201 @@
+package skinsrestorer.shared.utils;
+
+import java.io.IOException;
+
+/**
+ * Minimal pull parser for the small JSON documents Mojang sends.
+ * <p>
+ * Reads straight from the response string in one pass. Only the names and
+ * strings that are asked for get allocated, everything else is skipped in
+ * place. Commas are optional, the parser doesn't validate more than it needs
+ * to find its way.
+ */
+public class JsonReader {
+
+    private final String json;
+    private int pos;
+
+    public JsonReader(String json) {
+        this.json = json;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * @return Whether the current object or array has another element
+     */
+    public boolean hasNext() throws IOException {
+        char c = peek();
+
+        if (c == ',') {
+            pos++;
+            c = peek();
+        }
+
+        return c != '}' && c != ']';
+    }
+
+    public String nextName() throws IOException {
+        hasNext();
+        String name = readString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * @return The next value as string, numbers and literals as they are
+     * written, null for null
+     */
+    public String nextString() throws IOException {
+        char c = peek();
+
+        if (c == '"')
+            return readString();
+
+        int start = pos;
+        skipLiteral();
+        String literal = json.substring(start, pos);
+        return literal.equals("null") ? null : literal;
+    }
+
+    /**
+     * Skips the next value, including nested objects and arrays
+     */
+    public void skipValue() throws IOException {
+        char c = peek();
+
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = peek();
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[')
+                    depth++;
+                else if (c == '}' || c == ']')
+                    depth--;
+                pos++;
+            } while (depth > 0);
+        } else {
+            skipLiteral();
+        }
+    }
+
+    private char peek() throws IOException {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+            pos++;
+
+        if (pos >= json.length())
+            throw new IOException("Unexpected end of JSON");
+
+        return json.charAt(pos);
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c)
+            throw new IOException("Expected '" + c + "' at " + pos + " of JSON");
+        pos++;
+    }
+
+    private void skipLiteral() throws IOException {
+        int start = pos;
+        while (pos < json.length() && ",:}] \t\r\n".indexOf(json.charAt(pos)) == -1)
+            pos++;
+
+        if (pos == start)
+            throw new IOException("Expected a value at " + pos + " of JSON");
+    }
+
+    private void skipString() throws IOException {
+        expect('"');
+        while (pos < json.length()) {
+            char c = json.charAt(pos++);
+            if (c == '\\')
+                pos++;
+            else if (c == '"')
+                return;
+        }
+        throw new IOException("Unterminated string in JSON");
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        int start = pos;
+
+        // fast path, nothing to unescape
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c == '"')
+                return json.substring(start, pos++);
+            if (c == '\\')
+                break;
+            pos++;
+        }
+
+        StringBuilder sb = new StringBuilder(json.substring(start, pos));
+        while (pos < json.length()) {
+            char c = json.charAt(pos++);
+
+            if (c == '"')
+                return sb.toString();
+
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            if (pos >= json.length())
+                break;
+
+            c = json.charAt(pos++);
+            switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > json.length())
+                        throw new IOException("Invalid escape in JSON");
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid escape in JSON");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        throw new IOException("Unterminated string in JSON");
+    }
+}
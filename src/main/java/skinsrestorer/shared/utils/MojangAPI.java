@@ -1,14 +1,30 @@
 package skinsrestorer.shared.utils;
 
+import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
+import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.storage.Locale;
 import skinsrestorer.shared.storage.SkinStorage;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -16,7 +32,28 @@ public class MojangAPI {
 
     private static final String uuidurl = "https://api.mojang.com/users/profiles/minecraft/";
     private static final String skinurl = "https://sessionserver.mojang.com/session/minecraft/profile/";
+    private static final String profilesurl = "https://api.mojang.com/profiles/minecraft";
+    private static final long TIMEOUT = 5000;
+    private static final long RETRY_DELAY = 250;
+    private static final long MAX_RETRY_DELAY = 5000;
+    // the bulk endpoint takes up to 10 names and rejects the whole batch on an invalid one
+    private static final int BATCH_SIZE = 10;
+    private static final long BATCH_WINDOW = 50;
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_]{1,16}");
     private static MojangAPI mojangapi = new MojangAPI();
+    // lookups currently running, concurrent callers for the same key share them
+    private static final Map<String, CompletableFuture<String>> uuidLookups = new ConcurrentHashMap<>();
+    private static final Map<String, CompletableFuture<Object>> propertyLookups = new ConcurrentHashMap<>();
+    // name -> uuid, null for names that aren't premium
+    private static final ExpiringCache<String, String> uuidCache = new ExpiringCache<>(Config.UUID_CACHE_SIZE);
+    private static File uuidCacheFile;
+    private static final TokenBucket profilesBucket = new TokenBucket("Profiles", Config.RATE_LIMIT_PROFILES);
+    private static final TokenBucket sessionBucket = new TokenBucket("SessionServer", Config.RATE_LIMIT_SESSIONSERVER);
+    private static volatile CircuitBreaker profilesBreaker = newBreaker();
+    private static volatile CircuitBreaker sessionBreaker = newBreaker();
+    // token waits block the thread, background ones must not take the interactive threads
+    private static final UUIDBatcher batcher = new UUIDBatcher(BATCH_SIZE, BATCH_WINDOW, HttpClient::getExecutor,
+            MojangAPI::fetchUUIDs);
 
     /**
      * Returned object needs to be casted to either BungeeCord's property or
@@ -25,44 +62,163 @@ public class MojangAPI {
      * @return Property object (New Mojang, Old Mojang or Bungee)
      **/
     public static Object getSkinProperty(String uuid) throws SkinRequestException {
-        String output;
-        try {
-            output = readURL(skinurl + uuid + "?unsigned=false");
+        return getSkinProperty(uuid, false);
+    }
 
-            String sigbeg = "\"signature\":\"";
-            String mid = "\",\"name\":\"textures\",\"value\":\"";
-            String valend = "\"}]";
+    /**
+     * @param background - Whether the lookup may wait for interactive ones
+     *                   when the rate limit is reached
+     */
+    public static Object getSkinProperty(final String uuid, final boolean background) throws SkinRequestException {
+        return await(singleFlight(propertyLookups, uuid.toLowerCase(), background,
+                () -> run(() -> fetchSkinProperty(uuid, background), null)));
+    }
 
-            String signature = "", value = "";
+    /**
+     * Same as {@link #getSkinProperty(String, boolean)}, running on the HTTP
+     * pool for its priority unless a lookup of the uuid is in flight already
+     */
+    public static CompletableFuture<Object> getSkinPropertyAsync(final String uuid, final boolean background) {
+        return singleFlight(propertyLookups, uuid.toLowerCase(), background,
+                () -> run(() -> fetchSkinProperty(uuid, background), HttpClient.getExecutor(background)));
+    }
 
-            value = getStringBetween(output, mid, valend);
-            signature = getStringBetween(output, sigbeg, mid);
+    private static Object fetchSkinProperty(String uuid, boolean background) throws SkinRequestException {
+        String output;
+        try {
+            output = readURL(skinurl + uuid + "?unsigned=false", background);
 
-            return SkinStorage.createProperty("textures", value, signature);
-        } catch (Exception e) {
-            System.out.println("[SkinsRestorer] Switching to proxy to get skin property.");
-            return getSkinPropertyProxy(uuid);
+            return parseSkinProperty(output);
+        } catch (IOException e) {
+            throw new SkinRequestException(Locale.ALT_API_FAILED);
         }
     }
 
+    /**
+     * Fetches the skin property through the proxy pool, the rate limits don't
+     * apply there
+     */
     public static Object getSkinPropertyProxy(String uuid) throws SkinRequestException {
         String output;
         try {
             output = readURLProxy(skinurl + uuid + "?unsigned=false");
 
-            String sigbeg = "\"signature\":\"";
-            String mid = "\",\"name\":\"textures\",\"value\":\"";
-            String valend = "\"}]";
+            return parseSkinProperty(output);
+        } catch (IOException e) {
+            System.out.println("[SkinsRestorer] Failed to get proxy. Maybe you have an issue with your firewall?");
+            throw new SkinRequestException(Locale.ALT_API_FAILED);
+        }
+    }
+
+    /**
+     * Reads the textures property out of a sessionserver profile
+     *
+     * @return Property object, null if the profile has no textures
+     */
+    public static Object parseSkinProperty(String json) throws IOException {
+        JsonReader reader = new JsonReader(json);
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("properties")) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null, value = null, signature = null;
+
+                reader.beginObject();
+                while (reader.hasNext())
+                    switch (reader.nextName()) {
+                        case "name":
+                            name = reader.nextString();
+                            break;
+                        case "value":
+                            value = reader.nextString();
+                            break;
+                        case "signature":
+                            signature = reader.nextString();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                reader.endObject();
+
+                if ("textures".equals(name))
+                    return SkinStorage.createProperty("textures", value, signature);
+            }
+            reader.endArray();
+        }
 
-            String signature = "", value = "";
+        reader.endObject();
+        return null;
+    }
 
-            value = getStringBetween(output, mid, valend);
-            signature = getStringBetween(output, sigbeg, mid);
+    /**
+     * @return Dash-less uuid of a profile, null if Mojang answered with an error
+     */
+    private static String parseUUID(String json) throws IOException {
+        JsonReader reader = new JsonReader(json);
+        String id = null;
+
+        reader.beginObject();
+        while (reader.hasNext())
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "error":
+                    return null;
+                default:
+                    reader.skipValue();
+            }
+        reader.endObject();
+
+        if (id == null)
+            throw new IOException("Profile without id");
+
+        return id;
+    }
 
-            return SkinStorage.createProperty("textures", value, signature);
-        } catch (Exception e) {
-            System.out.println("[SkinsRestorer] Failed to get proxy. Maybe you have an issue with your firewall?");
-            return false;
+    /**
+     * Reads the skin url out of a base64 textures value, it tells two skins
+     * apart regardless of when they were fetched
+     *
+     * @return Skin url, empty if there is no skin, null if the value is malformed
+     */
+    public static String getTextureUrl(String value) {
+        try {
+            JsonReader reader = new JsonReader(Base64Coder.decodeString(value));
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("textures")) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("SKIN")) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("url"))
+                            return reader.nextString();
+                        reader.skipValue();
+                    }
+                    return "";
+                }
+                return "";
+            }
+            return "";
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
         }
     }
 
@@ -96,35 +252,371 @@ public class MojangAPI {
      * @throws SkinRequestException - If player is NOT_PREMIUM or server is RATE_LIMITED
      */
     public static String getUUID(String name) throws SkinRequestException {
+        return getUUID(name, false);
+    }
+
+    /**
+     * @param background - Whether the lookup may wait for interactive ones
+     *                   when the rate limit is reached
+     */
+    public static String getUUID(final String name, final boolean background) throws SkinRequestException {
+        ExpiringCache.Entry<String> cached = uuidCache.getEntry(name.toLowerCase());
+
+        if (cached != null)
+            return cachedUUID(cached);
+
+        return await(getUUIDAsync(name, background));
+    }
+
+    /**
+     * Same as {@link #getUUID(String, boolean)}, no thread waits for the
+     * batch or the request
+     */
+    public static CompletableFuture<String> getUUIDAsync(final String name, final boolean background) {
+        ExpiringCache.Entry<String> cached = uuidCache.getEntry(name.toLowerCase());
+
+        if (cached != null) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            try {
+                future.complete(cachedUUID(cached));
+            } catch (SkinRequestException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        return singleFlight(uuidLookups, name.toLowerCase(), background, () -> lookupUUID(name, background));
+    }
+
+    private static String cachedUUID(ExpiringCache.Entry<String> cached) throws SkinRequestException {
+        if (cached.getValue() == null)
+            throw new SkinRequestException(Locale.NOT_PREMIUM);
+        return cached.getValue();
+    }
+
+    /**
+     * Looks the uuid up through the batcher, falling back to the single
+     * endpoint when the bulk one fails. Caches the result, including
+     * NOT_PREMIUM.
+     */
+    private static CompletableFuture<String> lookupUUID(final String name, final boolean background) {
+        if (!VALID_NAME.matcher(name).matches())
+            return fetchUUIDAsync(name, background);
+
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        batcher.lookup(name, background).whenComplete((uuid, t) -> {
+            if (t == null) {
+                // null (not premium) got cached by fetchUUIDs already
+                if (uuid == null)
+                    result.completeExceptionally(new SkinRequestException(Locale.NOT_PREMIUM));
+                else
+                    result.complete(uuid);
+                return;
+            }
+
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof SkinRequestException
+                    && Locale.WAIT_A_MINUTE.equals(((SkinRequestException) cause).getReason())) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            // bulk endpoint failed, the single one may still work
+            forward(fetchUUIDAsync(name, background), result);
+        });
+        return result;
+    }
+
+    private static CompletableFuture<String> fetchUUIDAsync(final String name, final boolean background) {
+        return run(() -> {
+            try {
+                String uuid = fetchUUID(name, background);
+                uuidCache.put(name.toLowerCase(), uuid, TimeUnit.MINUTES.toMillis(Config.UUID_CACHE_EXPIRES_AFTER));
+                return uuid;
+            } catch (SkinRequestException e) {
+                if (Locale.NOT_PREMIUM.equals(e.getReason()))
+                    uuidCache.put(name.toLowerCase(), null, TimeUnit.MINUTES.toMillis(Config.NOT_PREMIUM_EXPIRES_AFTER));
+                throw e;
+            }
+        }, HttpClient.getExecutor(background));
+    }
+
+    /**
+     * Resolves the names in bulk, up to ten per request. Cached names don't
+     * cost a request.
+     *
+     * @return Lowercase name -> uuid of every name that could be resolved,
+     * names that aren't premium or that failed are left out
+     */
+    public static Map<String, String> getUUIDs(Collection<String> names, boolean background) {
+        Map<String, String> uuids = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+
+        for (String name : names) {
+            name = name.toLowerCase();
+            ExpiringCache.Entry<String> cached = uuidCache.getEntry(name);
+
+            if (cached != null) {
+                if (cached.getValue() != null)
+                    uuids.put(name, cached.getValue());
+            } else if (VALID_NAME.matcher(name).matches() && !missing.contains(name))
+                missing.add(name);
+        }
+
+        for (int i = 0; i < missing.size(); i += BATCH_SIZE)
+            try {
+                uuids.putAll(fetchUUIDs(missing.subList(i, Math.min(i + BATCH_SIZE, missing.size())), background));
+            } catch (SkinRequestException | IOException e) {
+                System.out.println("[SkinsRestorer] Could not resolve uuids in bulk: "
+                        + (e instanceof SkinRequestException ? ((SkinRequestException) e).getReason() : e.getMessage()));
+            }
+
+        return uuids;
+    }
+
+    /**
+     * One request to the bulk endpoint, caches every result
+     */
+    private static Map<String, String> fetchUUIDs(List<String> names, boolean background) throws SkinRequestException, IOException {
+        StringBuilder body = new StringBuilder("[");
+        for (String name : names)
+            body.append(body.length() == 1 ? "\"" : ",\"").append(name).append('"');
+        body.append(']');
+
+        Map<String, String> uuids = new HashMap<>();
+        JsonReader reader = new JsonReader(postURL(profilesurl, body.toString(), background));
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null, name = null;
+
+            reader.beginObject();
+            while (reader.hasNext())
+                switch (reader.nextName()) {
+                    case "id":
+                        id = reader.nextString();
+                        break;
+                    case "name":
+                        name = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            reader.endObject();
+
+            if (id != null && name != null)
+                uuids.put(name.toLowerCase(), id);
+        }
+        reader.endArray();
+
+        for (String name : names)
+            if (uuids.containsKey(name))
+                uuidCache.put(name, uuids.get(name), TimeUnit.MINUTES.toMillis(Config.UUID_CACHE_EXPIRES_AFTER));
+            else
+                uuidCache.put(name, null, TimeUnit.MINUTES.toMillis(Config.NOT_PREMIUM_EXPIRES_AFTER));
+
+        return uuids;
+    }
+
+    public static ExpiringCache<String, String> getUUIDCache() {
+        return uuidCache;
+    }
+
+    /**
+     * @return Rate limits of the profiles and the sessionserver endpoint
+     */
+    public static List<TokenBucket> getBuckets() {
+        return Arrays.asList(profilesBucket, sessionBucket);
+    }
+
+    /**
+     * @return Circuit breakers of the profiles and the sessionserver endpoint,
+     * by the name of their rate limit
+     */
+    public static Map<String, CircuitBreaker> getCircuitBreakers() {
+        Map<String, CircuitBreaker> breakers = new LinkedHashMap<>();
+        breakers.put(profilesBucket.getName(), profilesBreaker);
+        breakers.put(sessionBucket.getName(), sessionBreaker);
+        return breakers;
+    }
+
+    private static CircuitBreaker newBreaker() {
+        return new CircuitBreaker(Config.MOJANG_BREAKER_FAILURES, TimeUnit.SECONDS.toMillis(Config.MOJANG_BREAKER_OPEN_FOR),
+                TimeUnit.SECONDS.toMillis(Config.MOJANG_BREAKER_MAX_OPEN_FOR));
+    }
+
+    private static long maxWait(boolean background) {
+        return TimeUnit.SECONDS.toMillis(background ? Config.RATE_LIMIT_BACKGROUND_WAIT : Config.RATE_LIMIT_MAX_WAIT);
+    }
+
+    private static void take(TokenBucket bucket, boolean background) throws SkinRequestException {
+        if (!bucket.acquire(background, maxWait(background)))
+            throw new SkinRequestException(Locale.WAIT_A_MINUTE);
+    }
+
+    /**
+     * Sizes the uuid cache and, if enabled, loads the uuids saved on the last
+     * shutdown
+     */
+    public static void init(File pluginFolder) {
+        profilesBucket.setRate(Config.RATE_LIMIT_PROFILES);
+        sessionBucket.setRate(Config.RATE_LIMIT_SESSIONSERVER);
+        profilesBreaker = newBreaker();
+        sessionBreaker = newBreaker();
+        uuidCache.setMaxSize(Config.UUID_CACHE_SIZE);
+        uuidCacheFile = Config.UUID_CACHE_PERSIST ? new File(pluginFolder, "uuidcache.txt") : null;
+
+        if (uuidCacheFile == null || !uuidCacheFile.exists())
+            return;
+
+        try (BufferedReader buf = new BufferedReader(new FileReader(uuidCacheFile))) {
+            String line;
+            while ((line = buf.readLine()) != null) {
+                String[] entry = line.split(" ");
+                if (entry.length == 3)
+                    uuidCache.putUntil(entry[0], entry[1].equals("-") ? null : entry[1], Long.parseLong(entry[2]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("[SkinsRestorer] Could not load uuidcache.txt: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the uuid cache if enabled, call it when the plugin gets disabled
+     */
+    public static void close() {
+        if (uuidCacheFile == null)
+            return;
+
+        try (FileWriter writer = new FileWriter(uuidCacheFile)) {
+            for (Map.Entry<String, ExpiringCache.Entry<String>> e : uuidCache.getEntries().entrySet()) {
+                String uuid = e.getValue().getValue();
+                writer.write(e.getKey() + " " + (uuid == null ? "-" : uuid) + " " + e.getValue().getExpires() + "\n");
+            }
+        } catch (IOException e) {
+            System.out.println("[SkinsRestorer] Could not save uuidcache.txt: " + e.getMessage());
+        }
+    }
+
+    private static String fetchUUID(String name, boolean background) throws SkinRequestException {
         String output;
         try {
-            output = readURL(uuidurl + name);
+            output = readURL(uuidurl + name, background);
 
             if (output.isEmpty())
                 throw new SkinRequestException(Locale.NOT_PREMIUM);
-            else if (output.contains("\"error\""))
-                return getUUIDProxy(name);
 
-            return output.substring(7, 39);
+            String uuid = parseUUID(output);
+            if (uuid == null)
+                throw new SkinRequestException(Locale.ALT_API_FAILED);
+
+            return uuid;
         } catch (IOException e) {
-            System.out.println("[SkinsRestorer] Switching to proxy to get skin property.");
-            return getUUIDProxy(name);
+            throw new SkinRequestException(Locale.ALT_API_FAILED);
         }
     }
 
+    /**
+     * Looks the uuid up through the proxy pool, sharing the uuid cache with
+     * the direct lookups
+     */
     public static String getUUIDProxy(String name) throws SkinRequestException {
+        ExpiringCache.Entry<String> cached = uuidCache.getEntry(name.toLowerCase());
+
+        if (cached != null)
+            return cachedUUID(cached);
+
         String output;
         try {
             output = readURLProxy(uuidurl + name);
 
-            if (output.isEmpty())
+            if (output.isEmpty()) {
+                uuidCache.put(name.toLowerCase(), null, TimeUnit.MINUTES.toMillis(Config.NOT_PREMIUM_EXPIRES_AFTER));
                 throw new SkinRequestException(Locale.NOT_PREMIUM);
-            else if (output.contains("\"error\""))
+            }
+
+            String uuid = parseUUID(output);
+            if (uuid == null)
                 throw new SkinRequestException(Locale.ALT_API_FAILED);
 
-            return output.substring(7, 39);
+            uuidCache.put(name.toLowerCase(), uuid, TimeUnit.MINUTES.toMillis(Config.UUID_CACHE_EXPIRES_AFTER));
+            return uuid;
         } catch (IOException e) {
-            throw new SkinRequestException(e.getMessage());
+            throw new SkinRequestException(Locale.ALT_API_FAILED);
+        }
+    }
+
+    /**
+     * Joins the lookup running for the key, or starts it (on the executor or,
+     * if there is none, on the calling thread). Background callers also join
+     * a running interactive lookup. Interactive callers never join a background
+     * one, it may wait a long time for a rate limit token.
+     */
+    private static <T> CompletableFuture<T> singleFlight(final Map<String, CompletableFuture<T>> lookups, String key,
+                                                         boolean background, final Supplier<CompletableFuture<T>> lookup) {
+        CompletableFuture<T> interactive = background ? lookups.get(key) : null;
+        if (interactive != null)
+            return interactive;
+
+        final String flight = background ? "background:" + key : key;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> running = lookups.putIfAbsent(flight, future);
+
+        if (running != null)
+            return running;
+
+        future.whenComplete((result, t) -> lookups.remove(flight, future));
+        try {
+            forward(lookup.get(), future);
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+
+        return future;
+    }
+
+    /**
+     * Runs the lookup on the executor, or right away when there is none
+     */
+    private static <T> CompletableFuture<T> run(final Lookup<T> lookup, Executor exe) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                future.complete(lookup.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+
+        if (exe == null)
+            task.run();
+        else
+            exe.execute(task);
+
+        return future;
+    }
+
+    /**
+     * Completes the target with the outcome of the source, unwrapped
+     */
+    private static <T> void forward(CompletableFuture<T> source, final CompletableFuture<T> target) {
+        source.whenComplete((result, t) -> {
+            if (t == null)
+                target.complete(result);
+            else
+                target.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+        });
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws SkinRequestException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SkinRequestException)
+                throw (SkinRequestException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new SkinRequestException(String.valueOf(e.getCause()));
         }
     }
 
@@ -132,62 +624,128 @@ public class MojangAPI {
         return mojangapi;
     }
 
+    /**
+     * @return Random number from 0 to High (exclusive)
+     */
     public static int rand(int High) {
         Random r = new Random();
-        return r.nextInt(High - 1) + 1;
+        return r.nextInt(High);
     }
 
-    private static String readURL(String url) throws MalformedURLException, IOException, SkinRequestException {
-
-
-        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-
-        con.setRequestMethod("GET");
-        con.setRequestProperty("User-Agent", "SkinsRestorer");
-        con.setConnectTimeout(5000);
-        con.setReadTimeout(5000);
-        con.setDoOutput(true);
+    private static String readURL(String url, boolean background) throws SkinRequestException, IOException {
+        return send(url, null, background);
+    }
 
-        String line;
-        StringBuilder output = new StringBuilder();
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
+    private static String postURL(String url, String body, boolean background) throws SkinRequestException, IOException {
+        return send(url, body, background);
+    }
 
-        while ((line = in.readLine()) != null)
-            output.append(line);
+    /**
+     * Sends a request to Mojang through the endpoint's circuit breaker and
+     * rate limit. Server errors and connection problems are retried with
+     * backoff as long as the caller's wait allows, a 429 keeps everyone away
+     * for as long as its Retry-After says.
+     *
+     * @return Body of a successful response
+     * @throws IOException - If Mojang answered with an error code or couldn't be reached
+     */
+    private static String send(String url, String body, boolean background) throws SkinRequestException, IOException {
+        boolean session = url.startsWith(skinurl);
+        TokenBucket bucket = session ? sessionBucket : profilesBucket;
+        CircuitBreaker breaker = session ? sessionBreaker : profilesBreaker;
+        long deadline = System.currentTimeMillis() + maxWait(background);
+        IOException failure = null;
+        boolean rateLimited = false;
+
+        for (int attempt = 0; ; attempt++) {
+            // waiting for a token must not hold on to the half open trial
+            take(bucket, background);
+
+            // served from stored data meanwhile, the skin sources move on right away
+            if (!breaker.allowRequest())
+                throw new SkinRequestException(rateLimited ? Locale.WAIT_A_MINUTE : Locale.ALT_API_FAILED);
+
+            long wait = CircuitBreaker.backoff(RETRY_DELAY, MAX_RETRY_DELAY, attempt);
+            boolean recorded = false;
+            try {
+                HttpClient.Response response = null;
+                try {
+                    response = body == null ? HttpClient.get(url, null, TIMEOUT) : HttpClient.post(url, body, TIMEOUT);
+                } catch (IOException e) {
+                    failure = e;
+                }
+
+                if (response == null || response.getCode() >= 500) {
+                    breaker.recordFailure();
+                    recorded = true;
+                    if (response != null)
+                        failure = new IOException("Server returned HTTP response code: " + response.getCode() + " for URL: " + url);
+                } else if (response.getCode() == 429) {
+                    // our budget is off, nothing more gets through for now
+                    bucket.drain();
+                    rateLimited = true;
+                    failure = new IOException("Rate limited by " + new URL(url).getHost());
+                    if (response.getRetryAfterMillis() >= 0) {
+                        wait = response.getRetryAfterMillis();
+                        breaker.open(wait);
+                    } else {
+                        breaker.recordFailure();
+                    }
+                    recorded = true;
+                } else {
+                    breaker.recordSuccess();
+                    recorded = true;
+                    if (response.getCode() >= 400)
+                        throw new IOException("Server returned HTTP response code: " + response.getCode() + " for URL: " + url);
+                    return response.getBody();
+                }
+            } finally {
+                if (!recorded)
+                    breaker.releaseTrial();
+            }
+
+            if (attempt >= Config.MOJANG_RETRIES || System.currentTimeMillis() + wait > deadline)
+                break;
+
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
 
-        in.close();
-        return output.toString();
+        if (rateLimited)
+            throw new SkinRequestException(Locale.WAIT_A_MINUTE);
+        throw failure;
     }
 
-    private static String readURLProxy(String url) throws MalformedURLException, IOException, SkinRequestException {
-        HttpURLConnection con = null;
-        String ip = null;
-        int port = 0;
-        String proxyStr = null;
-        List<String> list = ProxyManager.getList();
-        proxyStr = list.get(rand(list.size() - 1));
-        String[] realProxy = proxyStr.split(":");
-        ip = realProxy[0];
-        port = Integer.valueOf(realProxy[1]);
-        Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(ip, port));
-        con = (HttpURLConnection) new URL(url).openConnection(proxy);
+    private static String readURLProxy(String url) throws IOException {
+        ProxyManager.Entry proxy = ProxyManager.select();
 
-        con.setRequestMethod("GET");
-        con.setRequestProperty("User-Agent", "SkinsRestorer");
-        con.setConnectTimeout(5000);
-        con.setReadTimeout(5000);
-        con.setDoOutput(true);
+        if (proxy == null)
+            throw new IOException("No proxy available");
 
-        String line;
-        StringBuilder output = new StringBuilder();
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
+        long start = System.currentTimeMillis();
+        HttpClient.Response response;
+        try {
+            response = HttpClient.get(url, proxy.getProxy(), TIMEOUT);
+        } catch (IOException e) {
+            ProxyManager.report(proxy, false, System.currentTimeMillis() - start);
+            throw e;
+        }
 
-        while ((line = in.readLine()) != null)
-            output.append(line);
+        // an error code usually means the proxy's ip got rate limited
+        ProxyManager.report(proxy, response.getCode() < 400, System.currentTimeMillis() - start);
 
-        in.close();
+        if (response.getCode() >= 400)
+            throw new IOException("Server returned HTTP response code: " + response.getCode() + " for URL: " + url);
+
+        return response.getBody();
+    }
 
-        return output.toString();
+    private interface Lookup<T> {
+        T get() throws SkinRequestException;
     }
 
     public static class SkinRequestException extends Exception {
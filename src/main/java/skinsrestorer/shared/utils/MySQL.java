@@ -2,13 +2,13 @@ package skinsrestorer.shared.utils;
 
 import skinsrestorer.shared.storage.Config;
 
-import javax.sql.rowset.CachedRowSet;
-import javax.sql.rowset.RowSetProvider;
 import java.sql.*;
-import java.util.concurrent.Callable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class MySQL {
 
@@ -16,7 +16,7 @@ public class MySQL {
      * Class by Blackfire62
      **/
 
-    private Connection con;
+    private ConnectionPool pool;
     private String host, port, database, username, password;
     private ExecutorService exe;
 
@@ -26,17 +26,26 @@ public class MySQL {
         this.database = database;
         this.username = username;
         this.password = password;
-        exe = Executors.newCachedThreadPool();
+        // async executes can't hold more connections than the pool has
+        exe = Executors.newFixedThreadPool(Math.max(Config.MYSQL_POOL_SIZE, 1), r -> {
+            Thread t = new Thread(r, "SkinsRestorer MySQL");
+            t.setDaemon(true);
+            return t;
+        });
         openConnection();
     }
 
     public void closeConnection() {
-        if (isConnected())
-            try {
-                con.close();
-            } catch (SQLException e) {
-                System.out.println("[SkinsRestorer] MySQL error: " + e.getMessage());
-            }
+        if (pool != null)
+            pool.close();
+        exe.shutdown();
+    }
+
+    /**
+     * @return Pool handing out the connections, null before the first connect
+     */
+    public ConnectionPool getPool() {
+        return pool;
     }
 
     public void createTable() {
@@ -64,48 +73,72 @@ public class MySQL {
     }
 
     public void execute(final String query, final Object... vars) {
-        if (isConnected())
-            exe.execute(new Runnable() {
-
-                @Override
-                public void run() {
-                    try {
-                        PreparedStatement ps = prepareStatement(query, vars);
-                        ps.execute();
-                        ps.close();
-                    } catch (SQLException e) {
-                        if (e.getMessage().contains("Duplicate column name")) {
-                            return;
-                        }
-                        e.printStackTrace();
-                        System.out.println("[SkinsRestorer] MySQL error: " + e.getMessage());
+        exe.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try (Connection con = pool.getConnection();
+                     PreparedStatement ps = prepareStatement(con, query, vars)) {
+                    ps.execute();
+                } catch (SQLException e) {
+                    if (e.getMessage().contains("Duplicate column name")) {
+                        return;
                     }
+                    e.printStackTrace();
+                    System.out.println("[SkinsRestorer] MySQL error: " + e.getMessage());
                 }
+            }
 
-            });
-        else {
-            openConnection();
-            execute(query, vars);
+        });
+    }
+
+    /**
+     * Runs the statement on the calling thread
+     *
+     * @return Number of rows changed
+     */
+    public int update(String query, Object... vars) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = prepareStatement(con, query, vars)) {
+            return ps.executeUpdate();
         }
     }
 
-    public boolean isConnected() {
-        try {
-            return con != null && !con.isClosed();
-        } catch (SQLException e) {
-            System.out.println("[SkinsRestorer] MySQL error: " + e.getMessage());
+    /**
+     * Runs the statement once per row as one JDBC batch in one transaction,
+     * the driver rewrites batched inserts into multi-row ones
+     */
+    public void batch(String query, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty())
+            return;
+
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement(query)) {
+            con.setAutoCommit(false);
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++)
+                    ps.setObject(i + 1, row[i]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            con.commit();
         }
-        return false;
+    }
+
+    public boolean isConnected() {
+        return pool != null && !pool.isClosed();
     }
 
     public void openConnection() {
-        if (!isConnected())
+        if (!isConnected()) {
+            pool = new ConnectionPool("jdbc:mysql://" + host + ":" + port + "/" + database + "?verifyServerCertificate=false&useSSL=false&rewriteBatchedStatements=true&useServerPrepStmts=true",
+                    username, password, Config.MYSQL_POOL_SIZE, TimeUnit.MINUTES.toMillis(Config.MYSQL_POOL_MAX_LIFETIME),
+                    TimeUnit.SECONDS.toMillis(Config.MYSQL_POOL_CONNECTION_TIMEOUT),
+                    TimeUnit.SECONDS.toMillis(Config.MYSQL_POOL_LEAK_THRESHOLD), Config.MYSQL_POOL_STATEMENT_CACHE);
             exe.execute(new Runnable() {
                 @Override
                 public void run() {
-                    try {
-                        con = DriverManager.getConnection("jdbc:mysql://" + host + ":" + port + "/" + database + "?verifyServerCertificate=false&useSSL=false",
-                                username, password);
+                    try (Connection con = pool.getConnection()) {
                         System.out.println("[SkinsRestorer] Connected to MySQL!");
                         createTable();
                     } catch (SQLException e) {
@@ -114,69 +147,71 @@ public class MySQL {
                 }
 
             });
+        }
     }
 
-    private PreparedStatement prepareStatement(String query, Object... vars) {
-        try {
-            if (isConnected()) {
-                PreparedStatement ps = con.prepareStatement(query);
-                int i = 0;
-                if (query.contains("?") && vars.length != 0)
-                    for (Object obj : vars) {
-                        i++;
-                        ps.setObject(i, obj);
-                    }
-                return ps;
-            } else {
-                openConnection();
-                return prepareStatement(query, vars);
+    private PreparedStatement prepareStatement(Connection con, String query, Object... vars) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(query);
+        int i = 0;
+        if (query.contains("?") && vars.length != 0)
+            for (Object obj : vars) {
+                i++;
+                ps.setObject(i, obj);
             }
-        } catch (SQLException e) {
-            System.out.println("[SkinsRestorer] MySQL error: " + e.getMessage());
-        }
-
-        return null;
+        return ps;
     }
 
-    public CachedRowSet query(final String query, final Object... vars) {
-        CachedRowSet rowSet = null;
-        if (isConnected())
-            try {
-
-                Future<CachedRowSet> future = exe.submit(new Callable<CachedRowSet>() {
-                    @Override
-                    public CachedRowSet call() {
-                        try {
-                            PreparedStatement ps = prepareStatement(query, vars);
-
-                            ResultSet rs = ps.executeQuery();
-                            CachedRowSet crs = RowSetProvider.newFactory().createCachedRowSet();
-                            crs.populate(rs);
-                            rs.close();
-                            ps.close();
+    /**
+     * Runs the query on the calling thread, with a connection of its own,
+     * mapping each row straight from the result set. Rows mapped to null are
+     * left out.
+     *
+     * @return Mapped rows, empty if there are none
+     */
+    public <T> List<T> query(final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+        return query(query, mapper, Integer.MAX_VALUE, vars);
+    }
 
-                            if (crs.next())
-                                return crs;
+    /**
+     * Like {@link #query(String, RowMapper, Object...)} but only maps the
+     * first row
+     *
+     * @return Mapped first row, null if there is none
+     */
+    public <T> T queryFirst(final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+        List<T> rows = query(query, mapper, 1, vars);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
 
-                        } catch (SQLException e) {
-                            System.out.println("[SkinsRestorer] MySQL error: " + e.getMessage());
-                        }
+    private <T> List<T> query(String query, RowMapper<T> mapper, int limit, Object... vars) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = prepareStatement(con, query, vars);
+             ResultSet rs = ps.executeQuery()) {
+            List<T> rows = null;
 
-                        return null;
-                    }
-                });
+            while (rs.next()) {
+                T row = mapper.map(rs);
+                if (row == null)
+                    continue;
 
-                if (future.get() != null)
-                    rowSet = future.get();
+                if (rows == null)
+                    rows = limit == 1 ? new ArrayList<>(1) : new ArrayList<>();
+                rows.add(row);
 
-            } catch (Exception e) {
-                System.out.println("[SkinsRestorer] MySQL error: " + e.getMessage());
+                if (rows.size() >= limit)
+                    break;
             }
-        else {
-            openConnection();
-            query(query, vars);
+
+            return rows == null ? Collections.<T>emptyList() : rows;
         }
+    }
+
+    /**
+     * Turns the current row of a result set into an object
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
 
-        return rowSet;
+        T map(ResultSet rs) throws SQLException;
     }
 }
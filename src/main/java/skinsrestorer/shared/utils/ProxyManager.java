@@ -1,23 +1,39 @@
 package skinsrestorer.shared.utils;
 
+import skinsrestorer.shared.storage.Config;
 import skinsrestorer.shared.utils.MojangAPI.SkinRequestException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.Charset;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Pool of HTTP proxies used when Mojang can't be reached directly.
+ * <p>
+ * Every proxy keeps an exponentially weighted moving average of its success
+ * rate and latency. Proxies are picked at random weighted by their score, so
+ * healthy and fast ones get most requests while the others still get probed.
+ * Fetched proxies that keep failing are evicted and the list gets fetched
+ * again once the pool runs low, proxies from the config are kept.
+ */
 public class ProxyManager {
 
+    private static final int POOL_SIZE = 5;
+    private static final double ALPHA = 0.3;
+    private static final int MIN_SAMPLES = 3;
+    private static final double EVICT_BELOW = 0.2;
+
     public static List<String> proxies = new ArrayList<String>();
     static String key = "c84d1076312bcf1e875c94d4e20692f5";
+    static String listUrl = "https://getmeproxy.com/api/v1.0/api.php?key=" + key + "&checked=1&s=5&list=text";
 
-    private static String inputLine;
+    private static final List<Entry> pool = new ArrayList<>();
+    private static final AtomicBoolean updating = new AtomicBoolean();
+    private static final Random random = new Random();
 
     public static List<String> getList() {
         if (proxies.isEmpty()) {
@@ -28,43 +44,194 @@ public class ProxyManager {
     }
 
     public static List<String> updateProxies() {
-        proxies = new ArrayList<String>();
-        String url = "https://getmeproxy.com/api/v1.0/api.php?key=c84d1076312bcf1e875c94d4e20692f5&checked=1&s=5&list=text";
-        try {
-            List<String> pp = readURL(url);
-            proxies = pp;
-        } catch (IOException | SkinRequestException e) {
-            e.printStackTrace();
+        List<String> fetched = new ArrayList<String>();
+
+        if (Config.PROXIES_FETCH_LIST) {
+            try {
+                fetched = readURL(listUrl);
+            } catch (IOException | SkinRequestException e) {
+                e.printStackTrace();
+            }
+        }
+
+        synchronized (pool) {
+            if (Config.PROXIES != null)
+                for (String proxy : Config.PROXIES)
+                    add(proxy, true);
+            for (String proxy : fetched)
+                if (pool.size() < POOL_SIZE + (Config.PROXIES == null ? 0 : Config.PROXIES.size()))
+                    add(proxy, false);
+            updateList();
         }
         return proxies;
     }
 
-    private static List<String> readURL(String url) throws MalformedURLException, IOException, SkinRequestException {
+    private static void add(String proxy, boolean configured) {
+        String[] address = proxy.trim().split(":");
+        if (address.length != 2)
+            return;
+
+        try {
+            Entry entry = new Entry(address[0], Integer.parseInt(address[1]), configured);
+            for (Entry e : pool)
+                if (e.toString().equals(entry.toString()))
+                    return;
+            pool.add(entry);
+        } catch (NumberFormatException e) {
+            System.out.println("[SkinsRestorer] Invalid proxy '" + proxy + "', expected host:port");
+        }
+    }
+
+    private static void updateList() {
+        List<String> list = new ArrayList<String>();
+        for (Entry e : pool)
+            list.add(e.toString());
+        proxies = list;
+    }
+
+    /**
+     * Picks a proxy at random, weighted by score
+     *
+     * @return Proxy to use, null if there is none
+     */
+    public static Entry select() {
+        if (pool.isEmpty())
+            updateProxies();
+
+        synchronized (pool) {
+            double total = 0;
+            for (Entry e : pool)
+                total += e.getScore();
+
+            double pick = random.nextDouble() * total;
+            for (Entry e : pool) {
+                pick -= e.getScore();
+                if (pick <= 0)
+                    return e;
+            }
+            return pool.isEmpty() ? null : pool.get(pool.size() - 1);
+        }
+    }
+
+    /**
+     * Records how a request through the proxy went, evicting it when it
+     * keeps failing
+     *
+     * @param latency - Milliseconds the request took
+     */
+    public static void report(Entry entry, boolean success, long latency) {
+        boolean refill = false;
+
+        synchronized (pool) {
+            entry.record(success, latency);
+
+            if (!entry.configured && entry.samples >= MIN_SAMPLES && entry.success < EVICT_BELOW && pool.remove(entry)) {
+                System.out.println("[SkinsRestorer] Dropping proxy " + entry + ", it keeps failing.");
+                updateList();
+                refill = pool.size() < POOL_SIZE;
+            }
+        }
+
+        if (refill && Config.PROXIES_FETCH_LIST && updating.compareAndSet(false, true))
+            HttpClient.getExecutor().execute(() -> {
+                try {
+                    updateProxies();
+                } finally {
+                    updating.set(false);
+                }
+            });
+    }
+
+    /**
+     * Empties the pool, the next selection fetches it again
+     */
+    static void clear() {
+        synchronized (pool) {
+            pool.clear();
+            updateList();
+        }
+    }
 
-        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+    /**
+     * @return Snapshot of the pool, for status output
+     */
+    public static List<Entry> getPool() {
+        synchronized (pool) {
+            return new ArrayList<>(pool);
+        }
+    }
+
+    private static List<String> readURL(String url) throws IOException, SkinRequestException {
+        HttpClient.Response response = HttpClient.get(url, null, 5000);
 
-        con.setRequestMethod("GET");
-        con.setRequestProperty("User-Agent", "SkinsRestorer");
-        con.setConnectTimeout(5000);
-        con.setReadTimeout(5000);
-        con.setDoOutput(true);
+        if (response.getCode() >= 400)
+            throw new IOException("Server returned HTTP response code: " + response.getCode() + " for URL: " + url);
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream(), Charset.forName("UTF-8")));
+        List<String> list = new ArrayList<String>();
         String str = "";
         int limit = 5;
-        while ((inputLine = in.readLine()) != null) {
-            str = inputLine;
-        }
+        for (String line : response.getBody().split("\\r?\\n"))
+            str = line;
         String[] asd = str.split("<br>");
         for (String d : asd) {
             if (limit == 0) {
                 break;
             }
-            proxies.add(d);
+            list.add(d);
             limit--;
         }
-        in.close();
 
-        return proxies;
+        return list;
+    }
+
+    public static class Entry {
+
+        private final String host;
+        private final int port;
+        private final boolean configured;
+        private final Proxy proxy;
+        // new proxies start out healthy so they get tried
+        private double success = 1;
+        private double latency = 1000;
+        private int samples;
+
+        private Entry(String host, int port, boolean configured) {
+            this.host = host;
+            this.port = port;
+            this.configured = configured;
+            this.proxy = new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(host, port));
+        }
+
+        private void record(boolean ok, long millis) {
+            success = ALPHA * (ok ? 1 : 0) + (1 - ALPHA) * success;
+            if (ok)
+                latency = ALPHA * millis + (1 - ALPHA) * latency;
+            samples++;
+        }
+
+        /**
+         * @return Success rate per second of latency, never quite 0 so
+         * every proxy keeps a chance to recover
+         */
+        public double getScore() {
+            return Math.max(success, 0.01) / (1 + latency / 1000D);
+        }
+
+        public Proxy getProxy() {
+            return proxy;
+        }
+
+        public double getSuccessRate() {
+            return success;
+        }
+
+        public double getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
     }
 }
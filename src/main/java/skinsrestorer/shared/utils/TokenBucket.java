@@ -0,0 +1,111 @@
+package skinsrestorer.shared.utils;
+
+/**
+ * Token bucket limiting the requests sent to one Mojang endpoint.
+ * <p>
+ * The bucket holds up to a minute worth of tokens and refills continuously.
+ * Callers wait for a token until their deadline, interactive callers are
+ * served before background ones.
+ */
+public class TokenBucket {
+
+    private final String name;
+    private volatile double capacity;
+    private volatile double perMilli;
+    private double tokens;
+    private long lastRefill = System.currentTimeMillis();
+    private int interactiveWaiting;
+    private int backgroundWaiting;
+
+    public TokenBucket(String name, int perMinute) {
+        this.name = name;
+        setRate(perMinute);
+        this.tokens = capacity;
+    }
+
+    public synchronized void setRate(int perMinute) {
+        refill();
+        this.capacity = Math.max(perMinute, 1);
+        this.perMilli = capacity / 60000D;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    private void refill() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * perMilli);
+        lastRefill = now;
+    }
+
+    /**
+     * Takes a token, waiting for one at most the given time. Gives up right
+     * away when no token can become available in time.
+     *
+     * @param background - Whether interactive callers should go first
+     * @param maxWait    - Milliseconds to wait at most
+     * @return Whether a token was taken
+     */
+    public synchronized boolean acquire(boolean background, long maxWait) {
+        long deadline = System.currentTimeMillis() + maxWait;
+
+        if (background)
+            backgroundWaiting++;
+        else
+            interactiveWaiting++;
+
+        try {
+            while (true) {
+                refill();
+
+                if (tokens >= 1 && (!background || interactiveWaiting == 0)) {
+                    tokens--;
+                    return true;
+                }
+
+                long left = deadline - System.currentTimeMillis();
+                long untilToken = (long) Math.ceil((1 - tokens) / perMilli);
+
+                if (left <= 0 || (untilToken > left && (background || interactiveWaiting == 1)))
+                    return false;
+
+                wait(Math.max(1, Math.min(left, untilToken)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (background)
+                backgroundWaiting--;
+            else
+                interactiveWaiting--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Empties the bucket, use it when the endpoint answered 429
+     */
+    public synchronized void drain() {
+        refill();
+        tokens = 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized double getTokens() {
+        refill();
+        return tokens;
+    }
+
+    public double getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Number of callers waiting for a token
+     */
+    public synchronized int getWaiting() {
+        return interactiveWaiting + backgroundWaiting;
+    }
+}
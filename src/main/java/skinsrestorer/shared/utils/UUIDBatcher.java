@@ -0,0 +1,120 @@
+package skinsrestorer.shared.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects single name to uuid lookups for a short window and resolves them
+ * with one request to the bulk profiles endpoint.
+ * <p>
+ * A batch is sent as soon as it is full or the window is over, whichever
+ * comes first. It only counts as background when every lookup in it is, and
+ * runs on the executor for its priority.
+ */
+class UUIDBatcher {
+
+    private final int batchSize;
+    private final long window;
+    private final Resolver resolver;
+    private final Function<Boolean, Executor> exe;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SkinsRestorer UUID Batcher");
+        t.setDaemon(true);
+        return t;
+    });
+    private List<Lookup> pending = new ArrayList<>();
+
+    /**
+     * @param exe - Executor for background (true) or interactive (false) batches
+     */
+    UUIDBatcher(int batchSize, long window, Function<Boolean, Executor> exe, Resolver resolver) {
+        this.batchSize = batchSize;
+        this.window = window;
+        this.exe = exe;
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return Completes with the uuid, null if the name isn't premium
+     */
+    CompletableFuture<String> lookup(String name, boolean background) {
+        Lookup lookup = new Lookup(name.toLowerCase(), background);
+        List<Lookup> full = null;
+
+        synchronized (this) {
+            pending.add(lookup);
+
+            if (pending.size() >= batchSize) {
+                full = pending;
+                pending = new ArrayList<>();
+            } else if (pending.size() == 1) {
+                final List<Lookup> batch = pending;
+                timer.schedule(() -> flush(batch), window, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full != null)
+            send(full);
+
+        return lookup.future;
+    }
+
+    private void flush(List<Lookup> batch) {
+        synchronized (this) {
+            // sent already because it got full
+            if (pending != batch)
+                return;
+            pending = new ArrayList<>();
+        }
+
+        send(batch);
+    }
+
+    private void send(final List<Lookup> batch) {
+        final List<String> names = new ArrayList<>();
+        boolean all = true;
+        for (Lookup lookup : batch) {
+            if (!names.contains(lookup.name))
+                names.add(lookup.name);
+            all &= lookup.background;
+        }
+
+        final boolean background = all;
+        exe.apply(background).execute(() -> {
+            try {
+                Map<String, String> uuids = resolver.resolve(names, background);
+                for (Lookup lookup : batch)
+                    lookup.future.complete(uuids.get(lookup.name));
+            } catch (Throwable t) {
+                for (Lookup lookup : batch)
+                    lookup.future.completeExceptionally(t);
+            }
+        });
+    }
+
+    interface Resolver {
+        /**
+         * @return Lowercase name -> uuid of every premium name
+         */
+        Map<String, String> resolve(List<String> names, boolean background) throws Exception;
+    }
+
+    private static class Lookup {
+
+        private final String name;
+        private final boolean background;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Lookup(String name, boolean background) {
+            this.name = name;
+            this.background = background;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package skinsrestorer.shared.storage;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Checks that the single read of skin and player files splits lines the way
+ * the old BufferedReader did.
+ */
+public class FileStorageBackendTest extends TestCase {
+
+    private File folder;
+    private FileStorageBackend backend;
+
+    @Override
+    protected void setUp() throws IOException {
+        folder = Files.createTempDirectory("skinsrestorer").toFile();
+        backend = new FileStorageBackend(folder, Runnable::run);
+    }
+
+    @Override
+    protected void tearDown() {
+        for (String sub : new String[]{"Skins", "Players"}) {
+            File[] files = new File(folder, sub).listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            new File(folder, sub).delete();
+        }
+        folder.delete();
+    }
+
+    private void write(String path, String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(folder, path))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public void testRoundTrip() {
+        backend.setSkin("steve", new SkinRecord("value", "signature", 1234)).join();
+        backend.setPlayerSkin("alex", "steve").join();
+
+        SkinRecord record = backend.getSkin("steve").join();
+        assertEquals("value", record.getValue());
+        assertEquals("signature", record.getSignature());
+        assertEquals(1234, record.getTimestamp());
+        assertEquals("steve", backend.getPlayerSkin("alex").join());
+    }
+
+    public void testLineEndings() throws IOException {
+        write("Skins/crlf.skin", "value\r\nsignature\r\n42\r\n");
+        write("Skins/cr.skin", "value\rsignature\r42");
+
+        for (String name : new String[]{"crlf", "cr"}) {
+            SkinRecord record = backend.readSkin(name);
+            assertEquals("value", record.getValue());
+            assertEquals("signature", record.getSignature());
+            assertEquals(42, record.getTimestamp());
+        }
+    }
+
+    public void testEmptyLinesFillTheFirstEmptyField() throws IOException {
+        // like the reader loop, an empty first line leaves the value to the next one
+        write("Skins/gap.skin", "\nvalue\nsignature");
+
+        try {
+            backend.readSkin("gap");
+            fail("missing timestamp should not parse");
+        } catch (IOException e) {
+            assertEquals("Invalid timestamp in gap.skin", e.getMessage());
+        }
+    }
+
+    public void testMissingFiles() throws IOException {
+        write("Players/empty.player", "");
+
+        assertNull(backend.readSkin("nobody"));
+        assertNull(backend.readPlayerSkin("nobody"));
+        assertNull(backend.readPlayerSkin("empty"));
+    }
+
+    public void testReadLines() throws IOException {
+        File file = new File(folder, "lines");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("a\n\nc\r\nd".getBytes(StandardCharsets.UTF_8));
+        }
+
+        String[] lines = FileStorageBackend.readLines(file, 5);
+        assertEquals("a", lines[0]);
+        assertEquals("", lines[1]);
+        assertEquals("c", lines[2]);
+        assertEquals("d", lines[3]);
+        assertNull(lines[4]);
+        file.delete();
+    }
+}
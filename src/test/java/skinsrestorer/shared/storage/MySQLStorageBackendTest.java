@@ -0,0 +1,167 @@
+package skinsrestorer.shared.storage;
+
+import junit.framework.TestCase;
+import skinsrestorer.shared.utils.FakeDatabase;
+import skinsrestorer.shared.utils.MySQL;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Runs the MySQL backend against {@link FakeDatabase}, checking what gets
+ * sent to the database.
+ */
+public class MySQLStorageBackendTest extends TestCase {
+
+    private final FakeDatabase db = FakeDatabase.get();
+    private MySQL mysql;
+    private MySQLStorageBackend backend;
+
+    @Override
+    protected void setUp() {
+        db.reset();
+        mysql = new MySQL(FakeDatabase.HOST, "3306", "skins", "user", "password");
+        backend = new MySQLStorageBackend(mysql, Runnable::run);
+        awaitTables();
+    }
+
+    /**
+     * Waits for the table setup MySQL starts on its own threads, so it
+     * neither fails with the test's errors nor outlives the test
+     */
+    private void awaitTables() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (db.getExecutions("create").size() < 2 || db.getExecutions("alter").isEmpty()) {
+            if (System.currentTimeMillis() > deadline)
+                fail("tables were not set up");
+            Thread.yield();
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        backend.close();
+        db.reset();
+    }
+
+    public void testSaveIsOneUpsert() {
+        backend.setSkin("steve", new SkinRecord("value", "signature", 1234)).join();
+        backend.setPlayerSkin("alex", "steve").join();
+
+        List<FakeDatabase.Execution> inserts = db.getExecutions("insert");
+        assertEquals(2, inserts.size());
+        assertTrue(inserts.get(0).getSql().contains("on duplicate key update"));
+        assertEquals(Arrays.<Object>asList("steve", "value", "signature", "1234"), inserts.get(0).getRows().get(0));
+        assertEquals(Arrays.<Object>asList("alex", "steve"), inserts.get(1).getRows().get(0));
+        // no select before the write, so no window between checking and writing
+        assertTrue(db.getExecutions("select").isEmpty());
+    }
+
+    public void testBatchedSaves() {
+        Map<String, SkinRecord> skins = new LinkedHashMap<>();
+        for (int i = 0; i < 10000; i++)
+            skins.put("skin" + i, new SkinRecord("value" + i, "signature" + i, i));
+
+        backend.setSkins(skins).join();
+
+        // 10k saves used to be a select and an insert or update each, 20k round trips
+        List<FakeDatabase.Execution> inserts = db.getExecutions("insert");
+        assertEquals(1, inserts.size());
+        assertEquals(10000, inserts.get(0).getRows().size());
+        assertEquals(Arrays.<Object>asList("skin9999", "value9999", "signature9999", "9999"),
+                inserts.get(0).getRows().get(9999));
+        assertTrue(db.getExecutions("select").isEmpty());
+    }
+
+    public void testBatchedPlayerSaves() {
+        Map<String, String> players = new LinkedHashMap<>();
+        players.put("alex", "steve");
+        players.put("bob", "notch");
+
+        backend.setPlayerSkins(players).join();
+
+        List<FakeDatabase.Execution> inserts = db.getExecutions("insert");
+        assertEquals(1, inserts.size());
+        assertEquals(2, inserts.get(0).getRows().size());
+    }
+
+    private static Map<String, Object> row(Object... columns) {
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < columns.length; i += 2)
+            row.put((String) columns[i], columns[i + 1]);
+        return row;
+    }
+
+    public void testMapsRows() {
+        db.setHandler((sql, params) -> {
+            if (sql.startsWith("select Value"))
+                return Arrays.asList(row("Value", "value", "Signature", "signature", "timestamp", "1234"),
+                        row("Value", "other", "Signature", "other", "timestamp", "1"));
+            if (sql.startsWith("select Nick from"))
+                return Arrays.asList(row("Nick", "alex"), row("Nick", "steve"));
+            return new ArrayList<>();
+        });
+
+        SkinRecord record = backend.getSkin("steve").join();
+        assertEquals("value", record.getValue());
+        assertEquals("signature", record.getSignature());
+        assertEquals(1234, record.getTimestamp());
+        assertEquals(Arrays.asList("alex", "steve"), backend.getSkinNames().join());
+
+        backend.getSkinNames(10, 20).join();
+        List<FakeDatabase.Execution> pages = db.getExecutions("select Nick from");
+        assertEquals(Arrays.<Object>asList(10, 20), pages.get(pages.size() - 1).getRows().get(0));
+    }
+
+    public void testMissingRow() {
+        assertNull(backend.getSkin("steve").join());
+        assertNull(backend.getPlayerSkin("alex").join());
+    }
+
+    public void testQueryErrorsSurface() {
+        db.setFailure(new SQLException("Communications link failure"));
+
+        try {
+            backend.getSkin("steve").join();
+            fail("a failed query should not look like a missing skin");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof StorageException);
+            assertFalse(((StorageException) e.getCause()).isUnreadable());
+            assertTrue(e.getCause().getCause() instanceof SQLException);
+        }
+
+        try {
+            mysql.query("select Nick from Skins", rs -> rs.getString("Nick"));
+            fail("a failed query should throw");
+        } catch (SQLException e) {
+            assertEquals("Communications link failure", e.getMessage());
+        }
+    }
+
+    public void testUnreadableRow() {
+        db.setHandler((sql, params) -> Arrays.asList(row("Value", "value", "Signature", "signature", "timestamp", "soon")));
+
+        try {
+            backend.getSkin("steve").join();
+            fail("a broken timestamp should not be read as a skin");
+        } catch (CompletionException e) {
+            assertTrue(((StorageException) e.getCause()).isUnreadable());
+        }
+    }
+
+    public void testBulkReadSkipsUnreadableRows() {
+        db.setHandler((sql, params) -> Arrays.asList(
+                row("Nick", "Steve", "Value", "value", "Signature", "signature", "timestamp", "1"),
+                row("Nick", "alex", "Value", "value", "Signature", "signature", "timestamp", "soon")));
+
+        Map<String, SkinRecord> records = backend.getSkins(Arrays.asList("steve", "alex")).join();
+        assertEquals(1, records.size());
+        assertEquals("value", records.get("steve").getValue());
+    }
+}
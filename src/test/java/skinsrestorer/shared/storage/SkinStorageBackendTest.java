@@ -0,0 +1,132 @@
+package skinsrestorer.shared.storage;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks the default bulk methods, which fan out to the single ones and wait
+ * for all of them.
+ */
+public class SkinStorageBackendTest extends TestCase {
+
+    // futures handed out by the backend, completed by the tests
+    private final Map<String, CompletableFuture<Void>> writes = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<SkinRecord>> reads = new ConcurrentHashMap<>();
+
+    private final SkinStorageBackend backend = new SkinStorageBackend() {
+
+        @Override
+        public CompletableFuture<SkinRecord> getSkin(String name) {
+            return reads.computeIfAbsent(name, n -> new CompletableFuture<>());
+        }
+
+        @Override
+        public CompletableFuture<Void> setSkin(String name, SkinRecord record) {
+            return writes.computeIfAbsent("s:" + name, n -> new CompletableFuture<>());
+        }
+
+        @Override
+        public CompletableFuture<Void> removeSkin(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<String> getPlayerSkin(String name) {
+            return CompletableFuture.completedFuture(name.equals("alex") ? "steve" : null);
+        }
+
+        @Override
+        public CompletableFuture<Void> setPlayerSkin(String name, String skin) {
+            return writes.computeIfAbsent("p:" + name, n -> new CompletableFuture<>());
+        }
+
+        @Override
+        public CompletableFuture<Void> removePlayerSkin(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<List<String>> getSkinNames() {
+            return CompletableFuture.completedFuture(Arrays.asList("a", "b", "c", "d"));
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private static Map<String, SkinRecord> records(String... names) {
+        Map<String, SkinRecord> records = new LinkedHashMap<>();
+        for (String name : names)
+            records.put(name, new SkinRecord("value", "signature", 1));
+        return records;
+    }
+
+    public void testSetSkinsWaitsForEveryWrite() {
+        CompletableFuture<Void> all = backend.setSkins(records("steve", "alex", "notch"));
+        assertEquals(3, writes.size());
+
+        writes.get("s:steve").complete(null);
+        writes.get("s:alex").complete(null);
+        assertFalse(all.isDone());
+
+        writes.get("s:notch").complete(null);
+        assertTrue(all.isDone());
+        assertFalse(all.isCompletedExceptionally());
+    }
+
+    public void testSetPlayerSkinsFailsWithOneWrite() {
+        Map<String, String> skins = new LinkedHashMap<>();
+        skins.put("alex", "steve");
+        skins.put("bob", "notch");
+
+        CompletableFuture<Void> all = backend.setPlayerSkins(skins);
+        writes.get("p:alex").complete(null);
+        writes.get("p:bob").completeExceptionally(new StorageException("disk full"));
+
+        try {
+            all.join();
+            fail("a failed write should fail the batch");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof StorageException);
+        }
+    }
+
+    public void testEmptyBatches() {
+        assertTrue(backend.setSkins(records()).isDone());
+        assertTrue(backend.setPlayerSkins(new LinkedHashMap<String, String>()).isDone());
+    }
+
+    public void testGetSkinsLeavesOutMissingAndBroken() {
+        CompletableFuture<Map<String, SkinRecord>> found = backend.getSkins(Arrays.asList("steve", "alex", "notch"));
+        SkinRecord record = new SkinRecord("value", "signature", 1);
+
+        reads.get("steve").complete(record);
+        reads.get("alex").complete(null);
+        assertFalse(found.isDone());
+        reads.get("notch").completeExceptionally(new StorageException("unreadable"));
+
+        assertEquals(1, found.join().size());
+        assertSame(record, found.join().get("steve"));
+    }
+
+    public void testGetPlayerSkins() {
+        Map<String, String> found = backend.getPlayerSkins(Arrays.asList("alex", "bob")).join();
+
+        assertEquals(1, found.size());
+        assertEquals("steve", found.get("alex"));
+    }
+
+    public void testSkinNamesPage() {
+        assertEquals(Arrays.asList("b", "c"), backend.getSkinNames(1, 2).join());
+        assertEquals(Arrays.asList("d"), backend.getSkinNames(3, 5).join());
+        assertTrue(backend.getSkinNames(9, 5).join().isEmpty());
+    }
+}
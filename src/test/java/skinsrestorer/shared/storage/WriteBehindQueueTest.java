@@ -0,0 +1,133 @@
+package skinsrestorer.shared.storage;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the queue against an in-memory backend that can be made to fail.
+ */
+public class WriteBehindQueueTest extends TestCase {
+
+    private final Map<String, SkinRecord> skins = new HashMap<>();
+    private final Map<String, String> players = new HashMap<>();
+    private volatile boolean failing;
+    private WriteBehindQueue queue;
+
+    private final SkinStorageBackend backend = new SkinStorageBackend() {
+
+        private CompletableFuture<Void> run(Runnable write) {
+            if (failing) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(new StorageException("database is down"));
+                return future;
+            }
+            synchronized (WriteBehindQueueTest.this) {
+                write.run();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<SkinRecord> getSkin(String name) {
+            return CompletableFuture.completedFuture(skins.get(name));
+        }
+
+        @Override
+        public CompletableFuture<Void> setSkin(String name, SkinRecord record) {
+            return run(() -> skins.put(name, record));
+        }
+
+        @Override
+        public CompletableFuture<Void> removeSkin(String name) {
+            return run(() -> skins.remove(name));
+        }
+
+        @Override
+        public CompletableFuture<String> getPlayerSkin(String name) {
+            return CompletableFuture.completedFuture(players.get(name));
+        }
+
+        @Override
+        public CompletableFuture<Void> setPlayerSkin(String name, String skin) {
+            return run(() -> players.put(name, skin));
+        }
+
+        @Override
+        public CompletableFuture<Void> removePlayerSkin(String name) {
+            return run(() -> players.remove(name));
+        }
+
+        @Override
+        public CompletableFuture<List<String>> getSkinNames() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Override
+    protected void setUp() {
+        // the timer never fires during a test, flushes are explicit
+        queue = new WriteBehindQueue(backend, 10, 1, TimeUnit.HOURS);
+    }
+
+    @Override
+    protected void tearDown() {
+        failing = false;
+        queue.close();
+    }
+
+    public void testCoalesces() {
+        queue.setPlayerSkin("alex", "steve");
+        queue.setPlayerSkin("alex", "notch");
+        assertEquals(1, queue.getDepth());
+
+        queue.flush();
+        assertEquals("notch", players.get("alex"));
+        assertEquals(1, queue.getWritten());
+        assertEquals(1, queue.getCoalesced());
+        assertEquals(0, queue.getDepth());
+    }
+
+    public void testKeepsFailedWrites() {
+        SkinRecord record = new SkinRecord("value", "signature", 1);
+        queue.setSkin("steve", record);
+        queue.setPlayerSkin("alex", "steve");
+        queue.removePlayerSkin("bob");
+
+        failing = true;
+        queue.flush();
+
+        assertEquals(3, queue.getDepth());
+        assertSame(record, queue.getPendingSkin("steve").getRecord());
+        assertEquals("steve", queue.getPendingPlayer("alex").getPlayerSkin());
+        assertTrue(queue.getPendingPlayer("bob").isRemoval());
+
+        failing = false;
+        queue.flush();
+
+        assertEquals(0, queue.getDepth());
+        assertSame(record, skins.get("steve"));
+        assertEquals("steve", players.get("alex"));
+    }
+
+    public void testNewerWriteWins() {
+        queue.setPlayerSkin("alex", "steve");
+
+        failing = true;
+        queue.flush();
+        queue.setPlayerSkin("alex", "notch");
+        assertEquals(1, queue.getDepth());
+
+        failing = false;
+        queue.flush();
+        assertEquals("notch", players.get("alex"));
+    }
+}
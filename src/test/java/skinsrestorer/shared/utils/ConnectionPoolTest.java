@@ -0,0 +1,120 @@
+package skinsrestorer.shared.utils;
+
+import junit.framework.TestCase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the pool against {@link FakeDatabase}, counting the statements the
+ * database had to prepare.
+ */
+public class ConnectionPoolTest extends TestCase {
+
+    private static final String SELECT = "select Value, Signature, timestamp from Skins where Nick=?";
+
+    private final FakeDatabase db = FakeDatabase.get();
+    private ConnectionPool pool;
+
+    @Override
+    protected void setUp() {
+        db.reset();
+    }
+
+    @Override
+    protected void tearDown() {
+        if (pool != null)
+            pool.close();
+        db.reset();
+    }
+
+    private ConnectionPool pool(int statementCacheSize) {
+        // one connection, so every borrow gets the same cache
+        return pool = new ConnectionPool("jdbc:fake:pool", "user", "password", 1, 0, 1000, 0, statementCacheSize);
+    }
+
+    private void execute(String sql, Object... vars) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int i = 0; i < vars.length; i++)
+                ps.setObject(i + 1, vars[i]);
+            ps.executeQuery();
+        }
+    }
+
+    public void testReusesStatements() throws SQLException {
+        pool(8);
+        for (int i = 0; i < 10; i++)
+            execute(SELECT, "steve" + i);
+
+        assertEquals(1, db.getPrepares());
+        assertEquals(9, pool.getStatementHits());
+        assertEquals(1, pool.getStatementMisses());
+        assertEquals(1, db.getConnections());
+        assertEquals(10, db.getExecutions().size());
+        assertEquals(Arrays.<Object>asList("steve9"), db.getExecutions().get(9).getRows().get(0));
+    }
+
+    public void testReuseStartsWithoutParameters() throws SQLException {
+        pool(8);
+        execute("select Nick from Skins where Nick=? or Nick=?", "steve", "alex");
+        execute("select Nick from Skins where Nick=? or Nick=?");
+
+        assertEquals(1, db.getPrepares());
+        assertEquals(Collections.emptyList(), db.getExecutions().get(1).getRows().get(0));
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws SQLException {
+        pool(2);
+        execute("select 1");
+        execute("select 2");
+        execute("select 1");
+        // evicts select 2, the least recently used
+        execute("select 3");
+        execute("select 1");
+        assertEquals(3, db.getPrepares());
+
+        execute("select 2");
+        assertEquals(4, db.getPrepares());
+        assertEquals(2, pool.getStatementHits());
+    }
+
+    public void testSameStatementTwiceAtOnce() throws SQLException {
+        pool(8);
+
+        try (Connection con = pool.getConnection();
+             PreparedStatement first = con.prepareStatement(SELECT);
+             PreparedStatement second = con.prepareStatement(SELECT)) {
+            assertNotSame(first, second);
+            first.setObject(1, "steve");
+            second.setObject(1, "alex");
+            first.executeQuery();
+            second.executeQuery();
+        }
+
+        List<FakeDatabase.Execution> executions = db.getExecutions();
+        assertEquals(Arrays.<Object>asList("steve"), executions.get(0).getRows().get(0));
+        assertEquals(Arrays.<Object>asList("alex"), executions.get(1).getRows().get(0));
+        assertEquals(2, db.getPrepares());
+        assertEquals(2, pool.getStatementMisses());
+
+        // the cached one is free again, the extra one was not kept
+        execute(SELECT, "notch");
+        assertEquals(2, db.getPrepares());
+        assertEquals(1, pool.getStatementHits());
+    }
+
+    public void testCacheDisabled() throws SQLException {
+        pool(0);
+        for (int i = 0; i < 3; i++)
+            execute(SELECT, "steve");
+
+        assertEquals(3, db.getPrepares());
+        assertEquals(0, pool.getStatementHits());
+        assertEquals(0, pool.getStatementMisses());
+    }
+}
@@ -0,0 +1,318 @@
+package skinsrestorer.shared.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver answering from memory, for testing the pool and the MySQL
+ * backend without a server. It takes jdbc:fake: urls and MySQL urls for the
+ * host fake.invalid.
+ * <p>
+ * Queries are answered by the {@link Handler}, everything sent to the
+ * database is recorded.
+ */
+public class FakeDatabase implements Driver {
+
+    public static final String HOST = "fake.invalid";
+    private static final FakeDatabase instance = new FakeDatabase();
+
+    static {
+        try {
+            DriverManager.registerDriver(instance);
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile Handler handler = (sql, params) -> Collections.emptyList();
+    private volatile SQLException failure;
+    private final List<Execution> executions = new ArrayList<>();
+    private int prepares;
+    private int connections;
+
+    public static FakeDatabase get() {
+        return instance;
+    }
+
+    /**
+     * Forgets everything recorded and answers every query with no rows again
+     */
+    public synchronized void reset() {
+        handler = (sql, params) -> Collections.emptyList();
+        failure = null;
+        executions.clear();
+        prepares = 0;
+        connections = 0;
+    }
+
+    public void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * @param failure - Thrown by every statement run from now on, null to stop
+     */
+    public void setFailure(SQLException failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * @return Number of statements the database had to prepare
+     */
+    public synchronized int getPrepares() {
+        return prepares;
+    }
+
+    public synchronized int getConnections() {
+        return connections;
+    }
+
+    /**
+     * @return Every statement run so far, a batch counts once
+     */
+    public synchronized List<Execution> getExecutions() {
+        return new ArrayList<>(executions);
+    }
+
+    /**
+     * @return Statements run so far whose SQL starts with the prefix
+     */
+    public synchronized List<Execution> getExecutions(String prefix) {
+        List<Execution> found = new ArrayList<>();
+        for (Execution execution : executions)
+            if (execution.sql.toLowerCase().startsWith(prefix.toLowerCase()))
+                found.add(execution);
+        return found;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url.startsWith("jdbc:fake:") || url.startsWith("jdbc:mysql://" + HOST);
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url))
+            return null;
+
+        synchronized (this) {
+            connections++;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new InvocationHandler() {
+                    private boolean closed;
+                    private boolean autoCommit = true;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        switch (method.getName()) {
+                            case "prepareStatement":
+                                synchronized (FakeDatabase.this) {
+                                    prepares++;
+                                }
+                                return statement((String) args[0]);
+                            case "close":
+                                closed = true;
+                                return null;
+                            case "isClosed":
+                                return closed;
+                            case "isValid":
+                                return !closed;
+                            case "getAutoCommit":
+                                return autoCommit;
+                            case "setAutoCommit":
+                                autoCommit = (Boolean) args[0];
+                                return null;
+                            case "commit":
+                            case "rollback":
+                                return null;
+                            default:
+                                return defaultValue(proxy, method, args);
+                        }
+                    }
+                });
+    }
+
+    private PreparedStatement statement(final String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                    private final Map<Integer, Object> params = new TreeMap<>();
+                    private final List<List<Object>> batch = new ArrayList<>();
+                    private boolean closed;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+
+                        if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+                            params.put((Integer) args[0], args[1]);
+                            return null;
+                        }
+
+                        switch (name) {
+                            case "clearParameters":
+                                params.clear();
+                                return null;
+                            case "addBatch":
+                                batch.add(new ArrayList<>(params.values()));
+                                params.clear();
+                                return null;
+                            case "clearBatch":
+                                batch.clear();
+                                return null;
+                            case "executeBatch":
+                                run(sql, new ArrayList<>(batch));
+                                int[] counts = new int[batch.size()];
+                                batch.clear();
+                                return counts;
+                            case "executeQuery":
+                                run(sql, Collections.singletonList(new ArrayList<>(params.values())));
+                                return resultSet(handler.query(sql, new ArrayList<>(params.values())));
+                            case "executeUpdate":
+                                run(sql, Collections.singletonList(new ArrayList<>(params.values())));
+                                return 1;
+                            case "execute":
+                                run(sql, Collections.singletonList(new ArrayList<>(params.values())));
+                                return false;
+                            case "close":
+                                closed = true;
+                                return null;
+                            case "isClosed":
+                                return closed;
+                            default:
+                                return defaultValue(proxy, method, args);
+                        }
+                    }
+                });
+    }
+
+    private void run(String sql, List<List<Object>> rows) throws SQLException {
+        SQLException failure = this.failure;
+        if (failure != null)
+            throw failure;
+
+        synchronized (this) {
+            executions.add(new Execution(sql, rows));
+        }
+    }
+
+    private static ResultSet resultSet(final List<Map<String, Object>> rows) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new InvocationHandler() {
+                    private int row = -1;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        switch (method.getName()) {
+                            case "next":
+                                return ++row < rows.size();
+                            case "getString":
+                                Object value = rows.get(row).get((String) args[0]);
+                                return value == null ? null : value.toString();
+                            case "getObject":
+                                return rows.get(row).get((String) args[0]);
+                            case "close":
+                                return null;
+                            default:
+                                return defaultValue(proxy, method, args);
+                        }
+                    }
+                });
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Fake " + method.getDeclaringClass().getSimpleName();
+        }
+
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class)
+            return false;
+        if (type == int.class || type == long.class)
+            return type == int.class ? (Object) 0 : (Object) 0L;
+        return null;
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return Logger.getGlobal();
+    }
+
+    /**
+     * Answers the queries
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * @param params - Parameters in order
+         * @return Rows as column name -> value
+         */
+        List<Map<String, Object>> query(String sql, List<Object> params) throws SQLException;
+    }
+
+    /**
+     * A statement the database ran
+     */
+    public static class Execution {
+
+        private final String sql;
+        private final List<List<Object>> rows;
+
+        private Execution(String sql, List<List<Object>> rows) {
+            this.sql = sql;
+            this.rows = rows;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return Parameters of every row, one for a single statement
+         */
+        public List<List<Object>> getRows() {
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package skinsrestorer.shared.utils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Parses responses shaped like Mojang's, including the field orders and
+ * whitespace the old substring and regex parsing got wrong.
+ */
+public class JsonReaderTest extends TestCase {
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++)
+            sb.append(c);
+        return sb.toString();
+    }
+
+    /**
+     * Same walk as MojangAPI.parseSkinProperty, without creating a property
+     *
+     * @return Value and signature of the textures property
+     */
+    private static String[] readTextures(String json) throws IOException {
+        JsonReader reader = new JsonReader(json);
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("properties")) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null, value = null, signature = null;
+
+                reader.beginObject();
+                while (reader.hasNext())
+                    switch (reader.nextName()) {
+                        case "name":
+                            name = reader.nextString();
+                            break;
+                        case "value":
+                            value = reader.nextString();
+                            break;
+                        case "signature":
+                            signature = reader.nextString();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                reader.endObject();
+
+                if ("textures".equals(name))
+                    return new String[]{value, signature};
+            }
+            reader.endArray();
+        }
+
+        reader.endObject();
+        return null;
+    }
+
+    public void testProfile() throws IOException {
+        String[] textures = readTextures("{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\","
+                + "\"properties\":[{\"name\":\"textures\",\"value\":\"dmFsdWU=\",\"signature\":\"c2ln\"}]}");
+
+        assertEquals("dmFsdWU=", textures[0]);
+        assertEquals("c2ln", textures[1]);
+    }
+
+    public void testReorderedAndPretty() throws IOException {
+        String[] textures = readTextures("{\n  \"properties\" : [ {\n    \"signature\" : \"c2ln\",\n"
+                + "    \"extra\" : { \"nested\" : [ 1, 2, { \"x\" : \"]}\" } ] },\n"
+                + "    \"value\" : \"dmFsdWU=\",\n    \"name\" : \"textures\"\n  } ],\n"
+                + "  \"legacy\" : true,\n  \"id\" : \"069a79f444e94726a5befca90e38aaf5\"\n}");
+
+        assertEquals("dmFsdWU=", textures[0]);
+        assertEquals("c2ln", textures[1]);
+    }
+
+    public void testNoTextures() throws IOException {
+        assertNull(readTextures("{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"properties\":[]}"));
+    }
+
+    public void testEscapesAndLiterals() throws IOException {
+        JsonReader reader = new JsonReader("{\"a\":\"q\\\"\\\\\\/\\u00e9\\n\",\"b\":null,\"c\":-1.5e3,\"d\":false}");
+        reader.beginObject();
+
+        assertEquals("a", reader.nextName());
+        assertEquals("q\"\\/\u00e9\n", reader.nextString());
+        assertEquals("b", reader.nextName());
+        assertNull(reader.nextString());
+        assertEquals("c", reader.nextName());
+        assertEquals("-1.5e3", reader.nextString());
+        assertEquals("d", reader.nextName());
+        assertEquals("false", reader.nextString());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    public void testTruncated() {
+        try {
+            readTextures("{\"properties\":[{\"name\":\"textures\",\"value\":\"dmFs");
+            fail("truncated JSON should not parse");
+        } catch (IOException e) {
+        }
+    }
+
+    public void testTextureUrl() {
+        String url = "http://textures.minecraft.net/texture/292009a4925b58f02c77dadc3ecef07ea4c7472f64e0fdc32ce5522489362680";
+        String payload = "{ \"textures\" : { \"CAPE\" : { \"url\" : \"http://example.invalid/cape\" },"
+                + " \"SKIN\" : { \"metadata\" : { \"model\" : \"slim\" }, \"url\" : \"" + url + "\" } },"
+                + " \"profileName\" : \"Notch\", \"timestamp\" : 1500000000000 }";
+
+        assertEquals(url, MojangAPI.getTextureUrl(encode(payload)));
+        assertEquals("", MojangAPI.getTextureUrl(encode("{\"textures\":{}}")));
+        assertNull(MojangAPI.getTextureUrl(encode("{\"textures\":")));
+    }
+
+    private static String encode(String json) {
+        return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The point of the reader: a profile costs little more than the two
+     * strings it returns, where the two regex scans compiled patterns and
+     * matchers every time
+     */
+    public void testAllocatesLessThanRegex() throws IOException {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return;
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        String value = repeat('v', 560), signature = repeat('s', 684);
+        String json = "{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\",\"properties\":[{\"name\":\"textures\","
+                + "\"value\":\"" + value + "\",\"signature\":\"" + signature + "\"}]}";
+
+        int runs = 20000;
+        for (int i = 0; i < runs; i++) {
+            readTextures(json);
+            MojangAPI.getStringBetween(json, "\"value\":\"", "\",\"signature\"");
+            MojangAPI.getStringBetween(json, "\"signature\":\"", "\"}]");
+        }
+
+        long start = mx.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < runs; i++)
+            readTextures(json);
+        long reader = (mx.getThreadAllocatedBytes(thread) - start) / runs;
+
+        start = mx.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < runs; i++) {
+            MojangAPI.getStringBetween(json, "\"value\":\"", "\",\"signature\"");
+            MojangAPI.getStringBetween(json, "\"signature\":\"", "\"}]");
+        }
+        long regex = (mx.getThreadAllocatedBytes(thread) - start) / runs;
+
+        assertTrue("reader " + reader + " B, regex " + regex + " B per profile", reader * 2 < regex);
+    }
+}
@@ -0,0 +1,173 @@
+package skinsrestorer.shared.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import skinsrestorer.shared.storage.Config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the proxy pool against a local server that serves the proxy list and
+ * answers proxied requests itself.
+ */
+public class ProxyManagerTest extends TestCase {
+
+    private HttpServer server;
+    private String address;
+    private final AtomicInteger listHits = new AtomicInteger();
+    private volatile String list;
+
+    private String oldListUrl;
+    private List<String> oldProxies;
+    private boolean oldFetchList;
+
+    @Override
+    protected void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/list", exchange -> {
+            listHits.incrementAndGet();
+            respond(exchange, list);
+        });
+        // proxied requests come in with the full target url, answer them all
+        server.createContext("/", exchange -> respond(exchange, "{}"));
+        server.start();
+        address = "127.0.0.1:" + server.getAddress().getPort();
+
+        oldListUrl = ProxyManager.listUrl;
+        oldProxies = Config.PROXIES;
+        oldFetchList = Config.PROXIES_FETCH_LIST;
+
+        ProxyManager.listUrl = "http://" + address + "/list";
+        Config.PROXIES = null;
+        Config.PROXIES_FETCH_LIST = true;
+        list = address;
+        ProxyManager.clear();
+    }
+
+    @Override
+    protected void tearDown() {
+        server.stop(0);
+        ProxyManager.listUrl = oldListUrl;
+        Config.PROXIES = oldProxies;
+        Config.PROXIES_FETCH_LIST = oldFetchList;
+        ProxyManager.clear();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ProxyManager.Entry find(String proxy) {
+        for (ProxyManager.Entry e : ProxyManager.getPool())
+            if (e.toString().equals(proxy))
+                return e;
+        return null;
+    }
+
+    public void testFetchesList() {
+        list = "10.0.0.1:8080<br>10.0.0.2:8080<br>invalid<br>10.0.0.1:8080";
+
+        assertEquals(Arrays.asList("10.0.0.1:8080", "10.0.0.2:8080"), ProxyManager.updateProxies());
+        assertEquals(1, listHits.get());
+    }
+
+    public void testConfiguredComeFirst() {
+        Config.PROXIES = Arrays.asList("10.0.0.9:3128");
+
+        assertEquals(Arrays.asList("10.0.0.9:3128", address), ProxyManager.updateProxies());
+    }
+
+    public void testRequestThroughProxy() throws IOException {
+        ProxyManager.Entry entry = ProxyManager.select();
+        assertEquals(address, entry.toString());
+
+        long start = System.currentTimeMillis();
+        HttpClient.Response response = HttpClient.get("http://skinsrestorer.invalid/profile", entry.getProxy(), 5000);
+        ProxyManager.report(entry, response.getCode() == 200, System.currentTimeMillis() - start);
+
+        assertEquals(200, response.getCode());
+        assertEquals(1D, entry.getSuccessRate(), 1e-9);
+        assertTrue(entry.getLatency() < 1000);
+    }
+
+    public void testMovingAverage() {
+        ProxyManager.Entry entry = ProxyManager.select();
+
+        ProxyManager.report(entry, false, 0);
+        assertEquals(0.7, entry.getSuccessRate(), 1e-9);
+        assertEquals(1000D, entry.getLatency(), 1e-9);
+
+        ProxyManager.report(entry, true, 200);
+        assertEquals(0.79, entry.getSuccessRate(), 1e-9);
+        assertEquals(760D, entry.getLatency(), 1e-9);
+    }
+
+    public void testSelectPrefersHealthy() {
+        Config.PROXIES = Arrays.asList("10.0.0.1:8080", "10.0.0.2:8080");
+        Config.PROXIES_FETCH_LIST = false;
+        ProxyManager.updateProxies();
+
+        ProxyManager.Entry good = find("10.0.0.1:8080");
+        ProxyManager.Entry bad = find("10.0.0.2:8080");
+        for (int i = 0; i < 5; i++) {
+            ProxyManager.report(good, true, 100);
+            ProxyManager.report(bad, false, 0);
+        }
+        assertTrue(good.getScore() > bad.getScore());
+
+        int picked = 0;
+        for (int i = 0; i < 1000; i++)
+            if (ProxyManager.select() == good)
+                picked++;
+        // about 90% with these scores, the bad one still gets probed
+        assertTrue("good proxy picked " + picked + " times", picked > 800 && picked < 1000);
+    }
+
+    public void testEvictsFailingFetched() throws InterruptedException {
+        ProxyManager.updateProxies();
+        ProxyManager.Entry entry = find(address);
+        assertNotNull(entry);
+
+        // 0.7^4 is still above the threshold, 0.7^5 is not
+        for (int i = 0; i < 4; i++)
+            ProxyManager.report(entry, false, 0);
+        assertNotNull(find(address));
+
+        // serve another proxy, so the refill can't put the evicted one back before it's checked
+        list = "10.0.0.5:8080";
+        ProxyManager.report(entry, false, 0);
+        assertNull(find(address));
+
+        // the pool ran low, so the list gets fetched again in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (find("10.0.0.5:8080") == null && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(2, listHits.get());
+        assertNotNull(find("10.0.0.5:8080"));
+        assertNull(find(address));
+    }
+
+    public void testKeepsConfigured() {
+        Config.PROXIES = Arrays.asList("10.0.0.9:3128");
+        Config.PROXIES_FETCH_LIST = false;
+        ProxyManager.updateProxies();
+
+        ProxyManager.Entry entry = find("10.0.0.9:3128");
+        for (int i = 0; i < 20; i++)
+            ProxyManager.report(entry, false, 0);
+
+        assertSame(entry, find("10.0.0.9:3128"));
+        assertTrue(entry.getScore() > 0);
+    }
+}